@@ -7,7 +7,9 @@
 package org.hibernate.search.jsr352.massindexing;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Properties;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -15,8 +17,11 @@ import java.util.stream.Collectors;
 import javax.batch.operations.JobOperator;
 import javax.batch.runtime.BatchRuntime;
 
+import org.hibernate.CacheMode;
 import org.hibernate.criterion.Criterion;
+import org.hibernate.search.exception.SearchException;
 import org.hibernate.search.jsr352.massindexing.impl.util.MassIndexerUtil;
+import org.hibernate.search.jsr352.massindexing.impl.util.PartitionedHql;
 
 /**
  * An alternative to the current mass indexer, using the Java Batch architecture as defined by JSR 352.
@@ -64,19 +69,41 @@ public class BatchIndexingJob {
 	public static class Builder {
 
 		private final Set<Class<?>> rootEntities;
+		private final Set<Class<?>> referenceEntities = new LinkedHashSet<>();
 		private String entityManagerFactoryScope;
 		private String entityManagerFactoryReference;
+		private boolean batchInitializeEmbedded = false;
+		private boolean bulkLoad = false;
 		private boolean cacheable = false;
+		private boolean joinFetchEmbedded = false;
+		private boolean loadEntitiesByIds = false;
 		private boolean optimizeAfterPurge = false;
 		private boolean optimizeAtEnd = false;
+		private boolean partitionHql = false;
 		private boolean purgeAtStart = false;
+		private boolean splitIdRange = false;
+		private boolean workStealing = false;
+		private long checkpointIntervalMillis = 0;
+		private long chunkBytes = 0;
+		private int chunksPerFlush = 1;
+		private int documentBuilderThreads = 1;
 		private int fetchSize = 200 * 1000;
+		private long flushIntervalMillis = 0;
 		private int itemCount = 200;
 		private int maxResults = 1000 * 1000;
+		private int maxSessionEntities = 0;
+		private int pageSize = 0;
+		private int referenceCacheSize = 10 * 1000;
+		private int partitionMappingThreads = 1;
+		private int partitionsPerThread = 0;
 		private int rowsPerPartition = 250;
 		private int maxThreads = 1;
+		private int writeBehindChunks = 0;
+		private CacheMode cacheMode = CacheMode.IGNORE;
+		private RowCountStrategy rowCountStrategy = RowCountStrategy.EXACT;
 		private JobOperator jobOperator;
 		private Set<Criterion> criteria;
+		private HashMap<String, Set<Criterion>> entityCriteria;
 		private String hql;
 
 		private Builder(Class<?> rootEntity, Class<?>... rootEntities) {
@@ -89,6 +116,7 @@ public class BatchIndexingJob {
 				this.rootEntities.add( clz );
 			}
 			criteria = new HashSet<>();
+			entityCriteria = new HashMap<>();
 			hql = "";
 		}
 
@@ -102,6 +130,57 @@ public class BatchIndexingJob {
 			return this;
 		}
 
+		/**
+		 * Whether the associations embedded in the index ({@code @IndexedEmbedded}) are initialized for a whole page of
+		 * entities before the document building, instead of being lazily loaded one by one. Proxies are grouped by
+		 * entity type and collections by role, then each group is loaded with a single query. This option requires
+		 * the entities to be loaded by IDs. The default value is false.
+		 *
+		 * @param batchInitializeEmbedded
+		 * @return
+		 * @see #loadEntitiesByIds(boolean)
+		 */
+		public Builder batchInitializeEmbedded(boolean batchInitializeEmbedded) {
+			this.batchInitializeEmbedded = batchInitializeEmbedded;
+			return this;
+		}
+
+		/**
+		 * Specify whether the index should be built in bulk-load mode, for an initial build when nobody queries the
+		 * index. Each partition then writes its documents into private Lucene indexes, one per target index, without
+		 * going through the shared backend of Hibernate Search. These private indexes are merged into the target
+		 * indexes at the end of the job. The private indexes are committed once, at the end of each partition, so
+		 * {@link #chunksPerFlush(int)} and {@link #flushIntervalMillis(long)} are ignored, and an interrupted partition
+		 * is indexed again from its beginning on restart. This mode requires {@link #purgeAtStart(boolean)} and
+		 * directory based index managers. The default value is false.
+		 *
+		 * @param bulkLoad
+		 * @return
+		 */
+		public Builder bulkLoad(boolean bulkLoad) {
+			this.bulkLoad = bulkLoad;
+			return this;
+		}
+
+		/**
+		 * Define after how many chunks the index is flushed. Each flush commits the index writers, so flushing less
+		 * often produces fewer and larger segments. The checkpoints only record the progress flushed to the index, so
+		 * the chunks written since the last flush are processed again if the job is restarted. The default value is 1,
+		 * which flushes after every chunk; 0 defers the flush to the end of each partition, unless a flush interval is
+		 * given. Flushing by RAM usage is controlled by the {@code indexwriter.ram_buffer_size} setting of Hibernate
+		 * Search, which flushes segments without committing them.
+		 *
+		 * @param chunksPerFlush the number of chunks between two flushes, or 0 to disable it.
+		 * @return
+		 */
+		public Builder chunksPerFlush(int chunksPerFlush) {
+			if ( chunksPerFlush < 0 ) {
+				throw new IllegalArgumentException( "chunksPerFlush must be at least 0" );
+			}
+			this.chunksPerFlush = chunksPerFlush;
+			return this;
+		}
+
 		/**
 		 * Whether the Hibernate queries are cacheable. This setting will be applied to
 		 * {@link org.hibernate.search.jsr352.massindexing.impl.steps.lucene.EntityReader} . The default value is false. Set it
@@ -115,9 +194,25 @@ public class BatchIndexingJob {
 			return this;
 		}
 
+		/**
+		 * Define the second-level cache interaction of the sessions loading the entities to index. The default value
+		 * is {@link CacheMode#IGNORE}, so that the indexing neither pollutes nor contends on the second-level cache.
+		 *
+		 * @param cacheMode
+		 * @return
+		 */
+		public Builder cacheMode(CacheMode cacheMode) {
+			if ( cacheMode == null ) {
+				throw new NullPointerException( "The cacheMode is null." );
+			}
+			this.cacheMode = cacheMode;
+			return this;
+		}
+
 		/**
 		 * Checkpoint frequency during the mass index process. The checkpoint will be done every N items read, where N
-		 * is the given item count.
+		 * is the given item count. If a checkpoint interval or a chunk byte volume is defined, this item count is only
+		 * the initial chunk size, and the chunk size then varies between 1 and 10 times this item count.
 		 *
 		 * @param itemCount the number of item count before starting the next checkpoint.
 		 * @return
@@ -127,6 +222,63 @@ public class BatchIndexingJob {
 			return this;
 		}
 
+		/**
+		 * Define the target duration of a chunk, in milliseconds, from the read of its first item to the end of its
+		 * write. The chunk size of each partition is then tuned after each checkpoint, using the durations observed
+		 * so far, so that chunks of expensive entity types are smaller than chunks of cheap ones. The default value is
+		 * 0, which means that the chunk size is fixed by the checkpoint frequency.
+		 *
+		 * @param checkpointIntervalMillis the target duration of a chunk, or 0 to disable it.
+		 * @return
+		 */
+		public Builder checkpointIntervalMillis(long checkpointIntervalMillis) {
+			if ( checkpointIntervalMillis < 0 ) {
+				throw new IllegalArgumentException( "checkpointIntervalMillis must be at least 0" );
+			}
+			this.checkpointIntervalMillis = checkpointIntervalMillis;
+			return this;
+		}
+
+		/**
+		 * Define the approximate volume of the documents of a chunk, in bytes. The chunk size of each partition is then
+		 * tuned after each checkpoint, using the average size of the documents written so far. It can be combined
+		 * with {@link #checkpointIntervalMillis(long)}, in which case the smaller chunk size is used. The default value
+		 * is 0, which means that the chunk size is not limited by the document volume.
+		 *
+		 * @param chunkBytes the approximate volume of a chunk, or 0 to disable it.
+		 * @return
+		 */
+		public Builder chunkBytes(long chunkBytes) {
+			if ( chunkBytes < 0 ) {
+				throw new IllegalArgumentException( "chunkBytes must be at least 0" );
+			}
+			this.chunkBytes = chunkBytes;
+			return this;
+		}
+
+		/**
+		 * The number of threads building the Lucene documents inside each partition. When greater than 1, the
+		 * partition thread hands the entities to a pool of document builder threads, so that the document building
+		 * overlaps the database reads and the index writes of the partition. The pool queue is bounded by the
+		 * checkpoint frequency: once it is full, the partition thread builds the documents itself. The associations
+		 * embedded in the index ({@code @IndexedEmbedded}) of each keyset page are initialized before the page is
+		 * read, so that the documents are built concurrently without using the partition session. The documents of
+		 * the entities reaching any uninitialized association, e.g. through a bridge reading a lazy association which
+		 * is not embedded, are built one thread at a time, while holding the session lock. This option requires a
+		 * {@link #pageSize(int)}, and cannot be used with HQL. The default value is 1.
+		 *
+		 * @param documentBuilderThreads
+		 * @return
+		 * @see #batchInitializeEmbedded(boolean)
+		 */
+		public Builder documentBuilderThreads(int documentBuilderThreads) {
+			if ( documentBuilderThreads < 1 ) {
+				throw new IllegalArgumentException( "documentBuilderThreads must be at least 1" );
+			}
+			this.documentBuilderThreads = documentBuilderThreads;
+			return this;
+		}
+
 		/**
 		 * Configure additional parameters for Java SE: assign the job operator.
 		 * You should NOT use this method if you're under Java EE.
@@ -139,6 +291,23 @@ public class BatchIndexingJob {
 			return this;
 		}
 
+		/**
+		 * Define the maximum time between two flushes of the index, in milliseconds. The index is flushed after the
+		 * first chunk written once this time has elapsed since the last flush, or when the number of chunks given by
+		 * {@link #chunksPerFlush(int)} is reached, whichever comes first. The default value is 0, which disables the
+		 * time-based flush.
+		 *
+		 * @param flushIntervalMillis the maximum time between two flushes, or 0 to disable it.
+		 * @return
+		 */
+		public Builder flushIntervalMillis(long flushIntervalMillis) {
+			if ( flushIntervalMillis < 0 ) {
+				throw new IllegalArgumentException( "flushIntervalMillis must be at least 0" );
+			}
+			this.flushIntervalMillis = flushIntervalMillis;
+			return this;
+		}
+
 		/**
 		 * The fetch size for the result fetching.
 		 *
@@ -153,9 +322,61 @@ public class BatchIndexingJob {
 			return this;
 		}
 
+		/**
+		 * Whether the to-one associations embedded in the index ({@code @IndexedEmbedded}) are fetched with a join
+		 * when entities are loaded by IDs. The associations are derived from the index metadata of each entity type,
+		 * including the nested ones. Only to-one associations are join fetched: the embedded collections would
+		 * multiply the rows selected for each entity, they are lazily loaded unless
+		 * {@link #batchInitializeEmbedded(boolean)} is enabled. This option requires the entities to be loaded by IDs.
+		 * The default value is false.
+		 *
+		 * @param joinFetchEmbedded
+		 * @return
+		 * @see #loadEntitiesByIds(boolean)
+		 */
+		public Builder joinFetchEmbedded(boolean joinFetchEmbedded) {
+			this.joinFetchEmbedded = joinFetchEmbedded;
+			return this;
+		}
+
+		/**
+		 * Read the entities in two phases: the IDs are read by keyset pages, then the entities of each page are loaded
+		 * with a single query, in the session used for the document building. This avoids loading the lazy associations
+		 * of each entity one by one, when combined with {@link #joinFetchEmbedded(boolean)}, which fetches the
+		 * embedded to-one associations, or with {@link #batchInitializeEmbedded(boolean)}, which also initializes the
+		 * embedded collections. The size of the pages is defined by {@link #pageSize(int)}, which is then required:
+		 * the entities read through a scrollable result cannot be loaded by IDs. The default value is false.
+		 *
+		 * @param loadEntitiesByIds
+		 * @return
+		 */
+		public Builder loadEntitiesByIds(boolean loadEntitiesByIds) {
+			this.loadEntitiesByIds = loadEntitiesByIds;
+			return this;
+		}
+
+		/**
+		 * Define the maximum number of entities held by the session of a partition. The session is cleared anyway
+		 * before each keyset page is fetched, or at the end of each chunk when the entities are read through a
+		 * scrollable result. This threshold also clears it in between, when the entity graphs are large: the rest of
+		 * the current keyset page is then fetched again. The default value is 0, which means that the session is only
+		 * cleared at these boundaries.
+		 *
+		 * @param maxSessionEntities the maximum number of entities in the session, or 0 for no maximum.
+		 * @return
+		 */
+		public Builder maxSessionEntities(int maxSessionEntities) {
+			if ( maxSessionEntities < 0 ) {
+				throw new IllegalArgumentException( "maxSessionEntities must be at least 0" );
+			}
+			this.maxSessionEntities = maxSessionEntities;
+			return this;
+		}
+
 		/**
 		 * The maximum number of results will be return from the HQL / criteria. It is equivalent to keyword `LIMIT` in
-		 * SQL.
+		 * SQL. The limit applies to each partition: with work stealing, it covers all the ID ranges read by the
+		 * partition, not each range.
 		 *
 		 * @param maxResults
 		 * @return
@@ -168,6 +389,24 @@ public class BatchIndexingJob {
 			return this;
 		}
 
+		/**
+		 * Read the entities by keyset pages of at most N rows, instead of using one scrollable result per partition.
+		 * Each page selects the entities whose ID is greater than the last ID read, so no database cursor is held open
+		 * between two pages, and the memory used by a partition is bounded by the page size. The entities of each page
+		 * are loaded in the session of the partition, which resolves their lazy associations during the document
+		 * building. The default value is 0, which means that entities are read through a scrollable result.
+		 *
+		 * @param pageSize the maximum number of entities fetched per page, or 0 to disable keyset pagination.
+		 * @return
+		 */
+		public Builder pageSize(int pageSize) {
+			if ( pageSize < 0 ) {
+				throw new IllegalArgumentException( "pageSize must be at least 0" );
+			}
+			this.pageSize = pageSize;
+			return this;
+		}
+
 		/**
 		 * Specify the maximum number of threads on which to execute the partitions of this step. Note the batch runtime
 		 * cannot guarantee the request number of threads are available; it will use as many as it can up to the request
@@ -210,6 +449,62 @@ public class BatchIndexingJob {
 			return this;
 		}
 
+		/**
+		 * Partition and checkpoint the HQL selection defined by {@link #restrictedBy(String)}, instead of reading it in
+		 * a single partition from the beginning. The HQL is then used as a subquery restricted to ID ranges, so it must
+		 * select the entities of a single root entity type. The default value is false.
+		 * <p>
+		 * The HQL is wrapped by rewriting it with regular expressions, not by parsing it, which brings a few limits:
+		 * <ul>
+		 * <li>it must have no {@code order by} clause, not even in a subquery of its own;</li>
+		 * <li>it must have a {@code select} clause or an alias on the entity of its {@code from} clause;</li>
+		 * <li>it must have no named or positional parameters, because they are never bound.</li>
+		 * </ul>
+		 * An HQL outside these limits makes the job fail with a {@link SearchException} when it starts, instead of
+		 * being read in a single partition.
+		 *
+		 * @param partitionHql
+		 * @return
+		 */
+		public Builder partitionHql(boolean partitionHql) {
+			this.partitionHql = partitionHql;
+			return this;
+		}
+
+		/**
+		 * Define the max number of entity types partitioned at the same time, each one using its own database
+		 * connection. Partitioning many large entity types one after another can delay the start of the indexing; a
+		 * greater value shortens this delay, at the cost of more concurrent queries. The default value is 1.
+		 *
+		 * @param partitionMappingThreads
+		 * @return
+		 */
+		public Builder partitionMappingThreads(int partitionMappingThreads) {
+			if ( partitionMappingThreads < 1 ) {
+				throw new IllegalArgumentException( "partitionMappingThreads must be at least 1" );
+			}
+			this.partitionMappingThreads = partitionMappingThreads;
+			return this;
+		}
+
+		/**
+		 * Derive the number of rows per partition from the number of rows to index, so that each thread receives
+		 * roughly N partitions, where N is the given number. Large entity types are then split in many partitions,
+		 * while small entity types are kept in few partitions, and all the threads stay busy until the end of the
+		 * step. When set, this option overrides {@link #rowsPerPartition(int)}. The default value is 0, which means
+		 * that the fixed number of rows per partition is used.
+		 *
+		 * @param partitionsPerThread the target number of partitions per thread, or 0 to disable it.
+		 * @return
+		 */
+		public Builder partitionsPerThread(int partitionsPerThread) {
+			if ( partitionsPerThread < 0 ) {
+				throw new IllegalArgumentException( "partitionsPerThread must be at least 0" );
+			}
+			this.partitionsPerThread = partitionsPerThread;
+			return this;
+		}
+
 		/**
 		 * Specify whether the existing lucene index should be purged at the beginning of the job. This operation takes
 		 * place before the step of lucene document production. The default value is false.
@@ -222,6 +517,47 @@ public class BatchIndexingJob {
 			return this;
 		}
 
+		/**
+		 * Declare entity types embedded in the indexed entities, typically small reference tables. The entities of
+		 * these types are loaded once before the job starts, and shared read-only by the document builders of all the
+		 * partitions, instead of being loaded by each partition. The associations of the reference entities, and the
+		 * associations embedded below them in the index to the full {@code @IndexedEmbedded} depth, are initialized
+		 * when they are cached.
+		 *
+		 * @param referenceEntity
+		 * @param referenceEntities
+		 * @return
+		 */
+		public Builder referenceEntities(Class<?> referenceEntity, Class<?>... referenceEntities) {
+			if ( referenceEntity == null ) {
+				throw new NullPointerException( "The referenceEntity is null." );
+			}
+			this.referenceEntities.add( referenceEntity );
+			for ( Class<?> clz : referenceEntities ) {
+				if ( clz == null ) {
+					throw new NullPointerException( "The referenceEntity is null." );
+				}
+				this.referenceEntities.add( clz );
+			}
+			return this;
+		}
+
+		/**
+		 * The maximum number of entities in the reference cache, for all the reference entity types together. The
+		 * types are cached in their declaration order, and a type whose rows do not fit in the remaining size is not
+		 * cached. The default value is 10000.
+		 *
+		 * @param referenceCacheSize
+		 * @return
+		 */
+		public Builder referenceCacheSize(int referenceCacheSize) {
+			if ( referenceCacheSize < 1 ) {
+				throw new IllegalArgumentException( "referenceCacheSize must be at least 1" );
+			}
+			this.referenceCacheSize = referenceCacheSize;
+			return this;
+		}
+
 		/**
 		 * Add criterion to choose the set of entities to index.
 		 *
@@ -240,6 +576,32 @@ public class BatchIndexingJob {
 			return this;
 		}
 
+		/**
+		 * Add criterion to choose the set of entities to index, for the given root entity only. It is applied in
+		 * addition to the criteria of all the root entities, and each root entity is partitioned independently.
+		 *
+		 * @param entityType
+		 * @param criterion
+		 * @return
+		 */
+		public Builder restrictedBy(Class<?> entityType, Criterion criterion) {
+			if ( !hql.isEmpty() ) {
+				throw new IllegalArgumentException( "Cannot use HQL approach "
+						+ "and Criteria approach in the same time." );
+			}
+			if ( entityType == null ) {
+				throw new NullPointerException( "The entityType is null." );
+			}
+			if ( criterion == null ) {
+				throw new NullPointerException( "The criterion is null." );
+			}
+			if ( !rootEntities.contains( entityType ) ) {
+				throw new IllegalArgumentException( "entityType must be one of the root entities." );
+			}
+			entityCriteria.computeIfAbsent( entityType.getName(), (k) -> new HashSet<>() ).add( criterion );
+			return this;
+		}
+
 		/**
 		 * Use HQL / JPQL to select to entities to index
 		 *
@@ -250,7 +612,7 @@ public class BatchIndexingJob {
 			if ( hql == null ) {
 				throw new NullPointerException( "The HQL is null." );
 			}
-			if ( criteria.size() > 0 ) {
+			if ( criteria.size() > 0 || entityCriteria.size() > 0 ) {
 				throw new IllegalArgumentException( "Cannot use HQL approach "
 						+ "and Criteria approach in the same time." );
 			}
@@ -258,8 +620,29 @@ public class BatchIndexingJob {
 			return this;
 		}
 
+		/**
+		 * Define how the number of rows to index is computed for each entity type, in order to report the indexing
+		 * progress. The default value is {@link RowCountStrategy#EXACT}, which may scan large tables before the
+		 * indexing starts.
+		 *
+		 * @param rowCountStrategy
+		 * @return
+		 */
+		public Builder rowCountStrategy(RowCountStrategy rowCountStrategy) {
+			if ( rowCountStrategy == null ) {
+				throw new NullPointerException( "The rowCountStrategy is null." );
+			}
+			this.rowCountStrategy = rowCountStrategy;
+			return this;
+		}
+
 		/**
 		 * Define the max number of rows to process per partition.
+		 * <p>
+		 * The partition boundaries of an entity type without criteria are selected in the database using the window
+		 * function {@code ROW_NUMBER()} on PostgreSQL, Oracle, SQL Server 2005 and later, and DB2. On any other
+		 * database, or for entity types sharing their table, restricted by a {@code @Where} clause or having a
+		 * composite ID, the mapper silently falls back to scrolling all the ordered IDs of the entity type.
 		 *
 		 * @param partitionCapacity
 		 * @return
@@ -273,6 +656,56 @@ public class BatchIndexingJob {
 			return this;
 		}
 
+		/**
+		 * Specify whether the partitions should be computed by splitting the ID range of each entity type into equal
+		 * spans, instead of reading the ordered IDs. Only the minimum and the maximum ID are selected, without
+		 * counting the rows, which makes the partitioning almost instant on large tables. The number of partitions is
+		 * derived from the number of rows to index counted before the partitioning, see
+		 * {@link #rowCountStrategy(RowCountStrategy)}, or else from the ID span. This works for entity types having an
+		 * integral ID, and gives balanced partitions only when IDs are mostly dense; other entity types are
+		 * partitioned as usual. The default value is false.
+		 *
+		 * @param splitIdRange
+		 * @return
+		 */
+		public Builder splitIdRange(boolean splitIdRange) {
+			this.splitIdRange = splitIdRange;
+			return this;
+		}
+
+		/**
+		 * Specify whether the partitions should steal their work from a shared queue of ID ranges, instead of reading a
+		 * fixed range each. A partition finishing its range claims the next range of the same entity type, so a slow
+		 * range does not keep the other threads idle at the end of the step. The ranges are computed as usual, using
+		 * the number of rows per partition, and each entity type receives at most one partition per thread. This option
+		 * cannot be used with HQL. The default value is false.
+		 *
+		 * @param workStealing
+		 * @return
+		 */
+		public Builder workStealing(boolean workStealing) {
+			this.workStealing = workStealing;
+			return this;
+		}
+
+		/**
+		 * Define how many chunks can wait to be written into the index by a dedicated writer thread, per partition.
+		 * The partition thread then reads and builds the next chunks while the previous ones are written, instead of
+		 * waiting for each chunk to be written. The checkpoints only record the chunks acknowledged by the writer
+		 * thread, so a restarted job processes again the chunks which were not durable in the index. The default value
+		 * is 0, which means that each chunk is written by the partition thread.
+		 *
+		 * @param writeBehindChunks the capacity of the write-behind queue, or 0 to disable it.
+		 * @return
+		 */
+		public Builder writeBehindChunks(int writeBehindChunks) {
+			if ( writeBehindChunks < 0 ) {
+				throw new IllegalArgumentException( "writeBehindChunks must be at least 0" );
+			}
+			this.writeBehindChunks = writeBehindChunks;
+			return this;
+		}
+
 		/**
 		 * Start the job.
 		 *
@@ -287,6 +720,35 @@ public class BatchIndexingJob {
 			if ( jobOperator == null ) {
 				jobOperator = BatchRuntime.getJobOperator();
 			}
+			if ( loadEntitiesByIds && pageSize == 0 ) {
+				throw new IllegalArgumentException( "Loading entities by IDs requires a pageSize." );
+			}
+			if ( documentBuilderThreads > 1 && ( pageSize == 0 || !hql.isEmpty() ) ) {
+				throw new IllegalArgumentException( "Several document builder threads require the entities "
+						+ "to be read by keyset pages, using a pageSize and no HQL." );
+			}
+			if ( joinFetchEmbedded && !loadEntitiesByIds ) {
+				throw new IllegalArgumentException( "The join fetch of embedded associations "
+						+ "requires the entities to be loaded by IDs." );
+			}
+			if ( batchInitializeEmbedded && !loadEntitiesByIds ) {
+				throw new IllegalArgumentException( "The batch initialization of embedded associations "
+						+ "requires the entities to be loaded by IDs." );
+			}
+			if ( partitionsPerThread > 0 && rowCountStrategy == RowCountStrategy.PARTITION_MAPPING ) {
+				throw new IllegalArgumentException( "partitionsPerThread requires the rows to be counted "
+						+ "before the partition mapping." );
+			}
+			if ( bulkLoad && !purgeAtStart ) {
+				throw new IllegalArgumentException( "Bulk load requires the index to be purged at start." );
+			}
+			if ( workStealing && !hql.isEmpty() ) {
+				throw new IllegalArgumentException( "Cannot use work stealing with the HQL approach." );
+			}
+			if ( partitionHql && !hql.isEmpty() ) {
+				// fail now if the HQL cannot be wrapped, rather than in the partition mapper
+				PartitionedHql.toSubquery( hql );
+			}
 
 			if ( entityManagerFactoryScope != null ) {
 				jobParams.put( "entityManagerFactoryScope", entityManagerFactoryScope );
@@ -294,20 +756,48 @@ public class BatchIndexingJob {
 			if ( entityManagerFactoryReference != null ) {
 				jobParams.put( "entityManagerFactoryReference", entityManagerFactoryReference );
 			}
+			jobParams.put( "batchInitializeEmbedded", String.valueOf( batchInitializeEmbedded ) );
+			jobParams.put( "bulkLoad", String.valueOf( bulkLoad ) );
 			jobParams.put( "cacheable", String.valueOf( cacheable ) );
+			jobParams.put( "cacheMode", cacheMode.name() );
+			jobParams.put( "checkpointIntervalMillis", String.valueOf( checkpointIntervalMillis ) );
+			jobParams.put( "chunkBytes", String.valueOf( chunkBytes ) );
+			jobParams.put( "chunksPerFlush", String.valueOf( chunksPerFlush ) );
+			jobParams.put( "documentBuilderThreads", String.valueOf( documentBuilderThreads ) );
 			jobParams.put( "fetchSize", String.valueOf( fetchSize ) );
+			jobParams.put( "flushIntervalMillis", String.valueOf( flushIntervalMillis ) );
 			jobParams.put( "hql", hql );
 			jobParams.put( "itemCount", String.valueOf( itemCount ) );
+			jobParams.put( "joinFetchEmbedded", String.valueOf( joinFetchEmbedded ) );
+			jobParams.put( "loadEntitiesByIds", String.valueOf( loadEntitiesByIds ) );
 			jobParams.put( "maxResults", String.valueOf( maxResults ) );
+			jobParams.put( "maxSessionEntities", String.valueOf( maxSessionEntities ) );
 			jobParams.put( "maxThreads", String.valueOf( maxThreads ) );
 			jobParams.put( "optimizeAfterPurge", String.valueOf( optimizeAfterPurge ) );
 			jobParams.put( "optimizeAtEnd", String.valueOf( optimizeAtEnd ) );
+			jobParams.put( "pageSize", String.valueOf( pageSize ) );
+			jobParams.put( "partitionHql", String.valueOf( partitionHql ) );
+			jobParams.put( "partitionMappingThreads", String.valueOf( partitionMappingThreads ) );
+			jobParams.put( "partitionsPerThread", String.valueOf( partitionsPerThread ) );
 			jobParams.put( "purgeAtStart", String.valueOf( purgeAtStart ) );
+			jobParams.put( "referenceCacheSize", String.valueOf( referenceCacheSize ) );
+			if ( !referenceEntities.isEmpty() ) {
+				jobParams.put( "referenceEntities", referenceEntities.stream()
+						.map( (e) -> e.getName() )
+						.collect( Collectors.joining( "," ) ) );
+			}
 			jobParams.put( "rootEntities", getRootEntitiesAsString() );
+			jobParams.put( "rowCountStrategy", rowCountStrategy.name() );
 			jobParams.put( "rowsPerPartition", String.valueOf( rowsPerPartition ) );
+			jobParams.put( "splitIdRange", String.valueOf( splitIdRange ) );
+			jobParams.put( "workStealing", String.valueOf( workStealing ) );
+			jobParams.put( "writeBehindChunks", String.valueOf( writeBehindChunks ) );
 			if ( !criteria.isEmpty() ) {
 				jobParams.put( "criteria", MassIndexerUtil.serializeCriteria( criteria ) );
 			}
+			if ( !entityCriteria.isEmpty() ) {
+				jobParams.put( "entityCriteria", MassIndexerUtil.serializeEntityCriteria( entityCriteria ) );
+			}
 			long executionId = jobOperator.start( JOB_NAME, jobParams );
 			return executionId;
 		}
@@ -7,27 +7,46 @@
 package org.hibernate.search.jsr352.massindexing;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.batch.api.BatchProperty;
 import javax.batch.api.listener.AbstractJobListener;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.JobInstance;
 import javax.batch.runtime.context.JobContext;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
 import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Projections;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.search.engine.metadata.impl.EmbeddedTypeMetadata;
+import org.hibernate.search.engine.metadata.impl.TypeMetadata;
+import org.hibernate.search.engine.spi.EntityIndexBinding;
 import org.hibernate.search.exception.SearchException;
+import org.hibernate.search.hcore.util.impl.ContextHelper;
 import org.hibernate.search.jpa.Search;
 import org.hibernate.search.jsr352.context.jpa.EntityManagerFactoryRegistry;
 import org.hibernate.search.jsr352.context.jpa.impl.ActiveSessionFactoryRegistry;
 import org.hibernate.search.jsr352.massindexing.impl.JobContextData;
+import org.hibernate.search.jsr352.massindexing.impl.steps.lucene.EmbeddedAssociationInitializer;
 import org.hibernate.search.jsr352.massindexing.impl.util.MassIndexerUtil;
+import org.hibernate.search.jsr352.massindexing.impl.util.ReferenceEntityCache;
+import org.hibernate.search.spi.SearchIntegrator;
 import org.hibernate.search.util.StringHelper;
+import org.hibernate.type.Type;
 import org.jboss.logging.Logger;
 
 /**
@@ -64,6 +83,18 @@ public class JobContextSetupListener extends AbstractJobListener {
 	@BatchProperty(name = "criteria")
 	private String serializedCriteria;
 
+	@Inject
+	@BatchProperty(name = "entityCriteria")
+	private String serializedEntityCriteria;
+
+	@Inject
+	@BatchProperty
+	private String referenceEntities;
+
+	@Inject
+	@BatchProperty
+	private String referenceCacheSize;
+
 	@Override
 	public void beforeJob() throws Exception {
 		setUpContext();
@@ -122,11 +153,18 @@ public class JobContextSetupListener extends AbstractJobListener {
 
 			Set<Criterion> criteria = MassIndexerUtil.deserializeCriteria( serializedCriteria );
 			LOGGER.infof( "%d criteria found.", criteria.size() );
+			Map<String, Set<Criterion>> entityCriteria = MassIndexerUtil
+					.deserializeEntityCriteria( serializedEntityCriteria );
+			LOGGER.infof( "%d entity types restricted by their own criteria.", entityCriteria.size() );
 
 			JobContextData jobContextData = new JobContextData();
 			jobContextData.setEntityManagerFactory( emf );
 			jobContextData.setCriteria( criteria );
+			jobContextData.setEntityCriteria( entityCriteria );
 			jobContextData.setEntityTypes( entityTypesToIndex );
+			jobContextData.setRestarted( isRestart() );
+			jobContextData.setReferenceEntityCache( buildReferenceEntityCache( em.unwrap( Session.class ),
+					entityTypesToIndex ) );
 			jobContext.setTransientUserData( jobContextData );
 		}
 		finally {
@@ -139,4 +177,98 @@ public class JobContextSetupListener extends AbstractJobListener {
 		}
 	}
 
+	/**
+	 * Check whether this execution restarts a previous execution of the job instance. The previous execution may have
+	 * indexed entities already, even if it crashed before persisting anything.
+	 */
+	private boolean isRestart() {
+		JobOperator jobOperator = BatchRuntime.getJobOperator();
+		JobInstance jobInstance = jobOperator.getJobInstance( jobContext.getExecutionId() );
+		return jobOperator.getJobExecutions( jobInstance ).size() > 1;
+	}
+
+	/**
+	 * Load the reference entities, so that the document builders of all the partitions read them from memory instead of
+	 * loading them once per partition. The reference entities are detached once the session is closed, so everything
+	 * the document builders may read from them is initialized before: their own associations, and the associations
+	 * embedded below them in the index of the entity types to index, to the full {@code @IndexedEmbedded} depth. The
+	 * cache size bounds the number of entities cached for all the types together: an entity type whose rows do not fit
+	 * in the remaining size is not cached at all.
+	 *
+	 * @param session the session loading the reference entities
+	 * @param entityTypesToIndex the entity types to index, whose index metadata give the embedded associations
+	 * @return the cache of reference entities, possibly empty.
+	 */
+	private ReferenceEntityCache buildReferenceEntityCache(Session session, Set<Class<?>> entityTypesToIndex) {
+		ReferenceEntityCache cache = new ReferenceEntityCache();
+		if ( StringHelper.isEmpty( referenceEntities ) ) {
+			return cache;
+		}
+		final int maxSize = Integer.parseInt( referenceCacheSize );
+		session.setDefaultReadOnly( true );
+		List<Object> references = new ArrayList<>();
+		for ( String entityName : referenceEntities.split( "," ) ) {
+			ClassMetadata metadata = session.getSessionFactory().getClassMetadata( entityName );
+			if ( metadata == null ) {
+				throw new SearchException( "The reference entity type '" + entityName + "' is not a mapped entity." );
+			}
+			long rowCount = ( (Number) session.createCriteria( entityName )
+					.setProjection( Projections.rowCount() )
+					.uniqueResult() ).longValue();
+			if ( references.size() + rowCount > maxSize ) {
+				LOGGER.warnf( "%d rows found for the reference entity type %s, more than the %d entities left in the "
+						+ "reference cache of size %d. This type is not cached.", rowCount, entityName,
+						maxSize - references.size(), maxSize );
+				continue;
+			}
+			Map<Serializable, Object> entitiesById = new HashMap<>();
+			for ( Object entity : session.createCriteria( entityName ).list() ) {
+				initializeAssociations( entity, metadata );
+				entitiesById.put( session.getIdentifier( entity ), entity );
+			}
+			references.addAll( entitiesById.values() );
+			cache.put( entityName, entitiesById );
+			LOGGER.infof( "%d reference entities of type %s cached.", entitiesById.size(), entityName );
+		}
+		if ( !references.isEmpty() ) {
+			EmbeddedAssociationInitializer initializer = new EmbeddedAssociationInitializer( session );
+			SearchIntegrator integrator = ContextHelper.getSearchIntegrator( session );
+			for ( Class<?> entityType : entityTypesToIndex ) {
+				EntityIndexBinding indexBinding = integrator.getIndexBindings().get( entityType );
+				if ( indexBinding != null ) {
+					initializeEmbeddedAssociations( references, indexBinding.getDocumentBuilder().getTypeMetadata(),
+							initializer );
+				}
+			}
+		}
+		return cache;
+	}
+
+	private static void initializeAssociations(Object entity, ClassMetadata metadata) {
+		Type[] types = metadata.getPropertyTypes();
+		Object[] values = metadata.getPropertyValues( entity );
+		for ( int i = 0; i < types.length; i++ ) {
+			if ( types[i].isAssociationType() ) {
+				Hibernate.initialize( values[i] );
+			}
+		}
+	}
+
+	/**
+	 * Initialize the associations embedded below the reference entities, wherever the given index metadata embed
+	 * a reference entity, at any level.
+	 */
+	private static void initializeEmbeddedAssociations(List<Object> references, TypeMetadata typeMetadata,
+			EmbeddedAssociationInitializer initializer) {
+		for ( EmbeddedTypeMetadata embedded : typeMetadata.getEmbeddedTypeMetadata() ) {
+			List<Object> embeddedReferences = references.stream()
+					.filter( embedded.getType()::isInstance )
+					.collect( Collectors.toList() );
+			if ( !embeddedReferences.isEmpty() ) {
+				initializer.initialize( embeddedReferences, embedded );
+			}
+			initializeEmbeddedAssociations( references, embedded, initializer );
+		}
+	}
+
 }
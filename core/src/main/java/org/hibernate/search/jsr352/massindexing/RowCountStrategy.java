@@ -0,0 +1,37 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing;
+
+/**
+ * Strategy used to compute the number of rows to index for each entity type, which is used to report the indexing
+ * progress.
+ *
+ * @author Mincong Huang
+ */
+public enum RowCountStrategy {
+
+	/**
+	 * Count the rows of each entity type with a {@code COUNT(*)} query. The count is exact, but it may scan the whole
+	 * table before the indexing starts.
+	 */
+	EXACT,
+
+	/**
+	 * Read the row count estimated by the database in its catalog statistics: {@code pg_class.reltuples} for
+	 * PostgreSQL, {@code information_schema.tables.table_rows} for MySQL. The estimate is only as accurate as the
+	 * statistics of the table, and it includes the rows of all the entity types sharing this table. Other databases,
+	 * and tables without statistics, fall back to the exact count.
+	 */
+	STATISTICS,
+
+	/**
+	 * Count the rows while computing the partition boundaries, which reads the IDs of each entity type anyway. When
+	 * the selection is defined by HQL, there's no such pass and the exact count is used instead. When the ID range is
+	 * split ({@code splitIdRange}), no ID is read: the count is estimated from the ID span, as if the IDs were dense.
+	 */
+	PARTITION_MAPPING
+}
@@ -8,7 +8,9 @@ package org.hibernate.search.jsr352.massindexing.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -17,7 +19,9 @@ import java.util.Set;
 import javax.persistence.EntityManagerFactory;
 
 import org.hibernate.criterion.Criterion;
+import org.hibernate.search.jsr352.massindexing.impl.util.IdRangeQueue;
 import org.hibernate.search.jsr352.massindexing.impl.util.PartitionBound;
+import org.hibernate.search.jsr352.massindexing.impl.util.ReferenceEntityCache;
 
 /**
  * Container for data shared across the entire batch job.
@@ -46,8 +50,35 @@ public class JobContextData {
 	 */
 	private List<PartitionBound> partitionBounds;
 
+	/**
+	 * The queue of ID ranges claimed by the partitions when they steal their work, null otherwise.
+	 */
+	private IdRangeQueue rangeQueue;
+
+	/**
+	 * The ids of the partitions completed by a previous execution of the job, skipped by the current execution.
+	 */
+	private Set<Integer> completedPartitions = Collections.emptySet();
+
+	/**
+	 * Whether this execution restarts a previous execution of the job instance, which may have indexed entities
+	 * already.
+	 */
+	private boolean restarted;
+
 	private Set<Criterion> criteria;
 
+	/**
+	 * The criteria restricting the selection of a single entity type, applied in addition to the criteria of all the
+	 * entity types. The key is the entity name.
+	 */
+	private Map<String, Set<Criterion>> entityCriteria = Collections.emptyMap();
+
+	/**
+	 * The read-only cache of reference entities, shared by the document builders of all the partitions.
+	 */
+	private ReferenceEntityCache referenceEntityCache = new ReferenceEntityCache();
+
 	public JobContextData() {
 		entityTypeMap = new HashMap<>();
 	}
@@ -92,6 +123,32 @@ public class JobContextData {
 		return criteria;
 	}
 
+	/**
+	 * Get the criteria restricting the selection of the given entity type: the criteria of all the entity types and
+	 * those of this entity type only.
+	 *
+	 * @param entityType the entity type
+	 * @return the criteria of the given entity type, may be empty.
+	 */
+	public Set<Criterion> getCriteria(Class<?> entityType) {
+		Set<Criterion> typeCriteria = entityCriteria.get( entityType.getName() );
+		if ( typeCriteria == null || typeCriteria.isEmpty() ) {
+			return criteria == null ? Collections.emptySet() : criteria;
+		}
+		Set<Criterion> allCriteria = new HashSet<>( typeCriteria );
+		if ( criteria != null ) {
+			allCriteria.addAll( criteria );
+		}
+		return allCriteria;
+	}
+
+	/**
+	 * @return true if the selection of at least one entity type is restricted by criteria.
+	 */
+	public boolean hasCriteria() {
+		return ( criteria != null && !criteria.isEmpty() ) || !entityCriteria.isEmpty();
+	}
+
 	public void setTotalEntityToIndex(long totalEntityToIndex) {
 		this.totalEntityToIndex = totalEntityToIndex;
 	}
@@ -113,10 +170,46 @@ public class JobContextData {
 		return partitionBounds.get( partitionId );
 	}
 
+	public IdRangeQueue getRangeQueue() {
+		return rangeQueue;
+	}
+
+	public void setRangeQueue(IdRangeQueue rangeQueue) {
+		this.rangeQueue = rangeQueue;
+	}
+
+	public boolean isPartitionCompleted(int partitionId) {
+		return completedPartitions.contains( partitionId );
+	}
+
+	public void setCompletedPartitions(Set<Integer> completedPartitions) {
+		this.completedPartitions = completedPartitions;
+	}
+
+	public boolean isRestarted() {
+		return restarted;
+	}
+
+	public void setRestarted(boolean restarted) {
+		this.restarted = restarted;
+	}
+
 	public void setCriteria(Set<Criterion> criteria) {
 		this.criteria = criteria;
 	}
 
+	public void setEntityCriteria(Map<String, Set<Criterion>> entityCriteria) {
+		this.entityCriteria = entityCriteria;
+	}
+
+	public ReferenceEntityCache getReferenceEntityCache() {
+		return referenceEntityCache;
+	}
+
+	public void setReferenceEntityCache(ReferenceEntityCache referenceEntityCache) {
+		this.referenceEntityCache = referenceEntityCache;
+	}
+
 	@Override
 	public String toString() {
 		return new StringBuilder()
@@ -125,7 +218,10 @@ public class JobContextData {
 				.append( ", entityTypeMap=" ).append( entityTypeMap )
 				.append( ", totalEntityToIndex=" ).append( totalEntityToIndex )
 				.append( ", partitionBounds=" ).append( partitionBounds )
+				.append( ", rangeQueue=" ).append( rangeQueue )
 				.append( ", criteria=" ).append( criteria )
+				.append( ", entityCriteria=" ).append( entityCriteria )
+				.append( ", referenceEntityCache=" ).append( referenceEntityCache )
 				.append( "]" )
 				.toString();
 	}
@@ -6,20 +6,39 @@
  */
 package org.hibernate.search.jsr352.massindexing.impl.steps.afterchunk;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 import javax.batch.api.AbstractBatchlet;
 import javax.batch.api.BatchProperty;
 import javax.batch.runtime.context.JobContext;
 import javax.inject.Inject;
 import javax.persistence.EntityManagerFactory;
 
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.search.exception.SearchException;
 import org.hibernate.search.hcore.util.impl.ContextHelper;
+import org.hibernate.search.indexes.spi.DirectoryBasedIndexManager;
+import org.hibernate.search.indexes.spi.IndexManager;
 import org.hibernate.search.jsr352.massindexing.impl.JobContextData;
+import org.hibernate.search.jsr352.massindexing.impl.steps.lucene.StepProgressFile;
+import org.hibernate.search.jsr352.massindexing.impl.util.BulkLoadDirectories;
+import org.hibernate.search.spi.SearchIntegrator;
 import org.jboss.logging.Logger;
 
 /**
- * Enhancements after the chunk step {@code produceLuceneDoc} (lucene document production)
+ * Enhancements after the chunk step {@code produceLuceneDoc} (lucene document production). In bulk-load mode, the
+ * private indexes written by the partitions are first merged into the target indexes. The copy of the step progress of
+ * {@code produceLuceneDoc}, only needed to restart this step, is deleted.
  *
  * @author Mincong Huang
  */
@@ -30,6 +49,10 @@ public class AfterChunkBatchlet extends AbstractBatchlet {
 	@Inject
 	private JobContext jobContext;
 
+	@Inject
+	@BatchProperty
+	private String bulkLoad;
+
 	@Inject
 	@BatchProperty
 	private String optimizeAtEnd;
@@ -38,15 +61,73 @@ public class AfterChunkBatchlet extends AbstractBatchlet {
 
 	@Override
 	public String process() throws Exception {
+		if ( Boolean.parseBoolean( this.bulkLoad ) ) {
+			JobContextData jobData = (JobContextData) jobContext.getTransientUserData();
+			mergePrivateIndexes( getSearchIntegrator(), jobData.getEntityTypes() );
+		}
 		if ( Boolean.parseBoolean( this.optimizeAtEnd ) ) {
 			LOGGER.info( "optimizing all entities ..." );
+			getSearchIntegrator().optimize();
+		}
+		StepProgressFile.delete( jobContext.getInstanceId() );
+		return null;
+	}
 
+	private SearchIntegrator getSearchIntegrator() {
+		if ( session == null ) {
 			JobContextData jobData = (JobContextData) jobContext.getTransientUserData();
 			EntityManagerFactory emf = jobData.getEntityManagerFactory();
 			session = emf.unwrap( SessionFactory.class ).openSession();
-			ContextHelper.getSearchIntegrator( session ).optimize();
 		}
-		return null;
+		return ContextHelper.getSearchIntegrator( session );
+	}
+
+	/**
+	 * Merge the private indexes written by the partitions into the index of each index manager of the given entity
+	 * types. The index manager releases its index writer first, so that the merge can lock the index. The segments
+	 * are copied without being analyzed again, so no analyzer of the entity types is needed.
+	 */
+	private void mergePrivateIndexes(SearchIntegrator searchIntegrator, List<Class<?>> entityTypes)
+			throws IOException {
+		Set<IndexManager> indexManagers = new LinkedHashSet<>();
+		for ( Class<?> entityType : entityTypes ) {
+			for ( IndexManager im : searchIntegrator.getIndexBinding( entityType ).getIndexManagers() ) {
+				indexManagers.add( im );
+			}
+		}
+		final long instanceId = jobContext.getInstanceId();
+		for ( IndexManager im : indexManagers ) {
+			List<Path> paths = BulkLoadDirectories.getPartitionDirectories( instanceId, im.getIndexName() );
+			if ( paths.isEmpty() ) {
+				continue;
+			}
+			if ( !( im instanceof DirectoryBasedIndexManager ) ) {
+				// already checked by the partitions before writing
+				throw new SearchException( "Bulk load requires a directory based index manager, "
+						+ "but index " + im.getIndexName() + " uses " + im.getClass().getName() );
+			}
+			LOGGER.infof( "merging %d private indexes into index %s ...", paths.size(), im.getIndexName() );
+			im.flushAndReleaseResources();
+			Directory target = ( (DirectoryBasedIndexManager) im ).getDirectoryProvider().getDirectory();
+			IndexWriterConfig config = new IndexWriterConfig( new KeywordAnalyzer() )
+					.setOpenMode( IndexWriterConfig.OpenMode.CREATE_OR_APPEND );
+			Directory[] sources = new Directory[paths.size()];
+			try ( IndexWriter indexWriter = new IndexWriter( target, config ) ) {
+				for ( int i = 0; i < sources.length; i++ ) {
+					sources[i] = FSDirectory.open( paths.get( i ) );
+				}
+				indexWriter.addIndexes( sources );
+				indexWriter.commit();
+			}
+			finally {
+				for ( Directory source : sources ) {
+					if ( source != null ) {
+						source.close();
+					}
+				}
+			}
+		}
+		BulkLoadDirectories.delete( instanceId );
 	}
 
 	@Override
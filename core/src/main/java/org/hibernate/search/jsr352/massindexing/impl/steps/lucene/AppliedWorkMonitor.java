@@ -0,0 +1,74 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import org.hibernate.search.backend.IndexingMonitor;
+import org.hibernate.search.exception.SearchException;
+
+/**
+ * Monitor of the works submitted to an index manager, telling when all of them are applied to its index writer. A
+ * synchronous backend applies the works before {@code performOperations} returns, but an asynchronous one only queues
+ * them: the index manager must not be flushed before they are applied, otherwise the flush commits the index without
+ * them.
+ * <p>
+ * The backend calls the monitor once per document added, including the documents of the update works.
+ *
+ * @author Mincong Huang
+ */
+public class AppliedWorkMonitor implements IndexingMonitor {
+
+	private final long timeoutMillis;
+	private long worksSubmitted;
+	private long worksApplied;
+
+	/**
+	 * @param timeoutMillis the maximum time to wait without any work being applied, in milliseconds. A work which
+	 * failed in the backend is never applied, so the wait must not be endless.
+	 */
+	public AppliedWorkMonitor(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Record works submitted to the index manager with this monitor.
+	 *
+	 * @param increment the number of works
+	 */
+	public synchronized void worksSubmitted(long increment) {
+		worksSubmitted += increment;
+	}
+
+	@Override
+	public synchronized void documentsAdded(long increment) {
+		worksApplied += increment;
+		notifyAll();
+	}
+
+	/**
+	 * Wait until all the works submitted so far are applied.
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 * @throws SearchException if no work is applied during the timeout.
+	 */
+	public synchronized void awaitWorksApplied() throws InterruptedException {
+		long lastApplied = worksApplied;
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while ( worksApplied < worksSubmitted ) {
+			long remaining = deadline - System.currentTimeMillis();
+			if ( worksApplied > lastApplied ) {
+				lastApplied = worksApplied;
+				remaining = timeoutMillis;
+				deadline = System.currentTimeMillis() + timeoutMillis;
+			}
+			if ( remaining <= 0 ) {
+				throw new SearchException( ( worksSubmitted - worksApplied ) + " works submitted to the index are not "
+						+ "applied after " + timeoutMillis + " ms, they may have failed in the backend" );
+			}
+			wait( remaining );
+		}
+	}
+}
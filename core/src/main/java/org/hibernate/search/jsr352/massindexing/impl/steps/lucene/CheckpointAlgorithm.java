@@ -6,21 +6,42 @@
  */
 package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.batch.api.BatchProperty;
 import javax.batch.api.chunk.AbstractCheckpointAlgorithm;
-import javax.batch.runtime.Metric;
 import javax.batch.runtime.context.StepContext;
 import javax.inject.Inject;
 
+import org.jboss.logging.Logger;
+
 /**
  * This checkpoint algorithm is used to provide a checkpoint decision based on the item count N given by the user. So,
  * the job is ready to checkpoint each N items. If user does not specify the itemCount value, default value described in
  * the mass indexer will be applied.
+ * <p>
+ * If a checkpoint interval or a chunk byte volume is given, the item count is only the initial chunk size. After each
+ * checkpoint, the chunk size is tuned so that a chunk lasts about the checkpoint interval, measured from the read of
+ * its first item to the end of its write, and holds about the byte volume, estimated from the documents written so far.
+ * The chunk size stays between 1 and {@value #MAX_CHUNK_SIZE_FACTOR} times the item count, and is exposed in the
+ * partition progress. The checkpoint interval is also enforced directly, when items become much slower than before.
  *
  * @author Mincong Huang
  */
 public class CheckpointAlgorithm extends AbstractCheckpointAlgorithm {
 
+	private static final Logger LOGGER = Logger.getLogger( CheckpointAlgorithm.class );
+
+	/**
+	 * The maximum chunk size, as a factor of the item count.
+	 */
+	private static final int MAX_CHUNK_SIZE_FACTOR = 10;
+
+	/**
+	 * The weight of the last chunk in the moving average of the item duration.
+	 */
+	private static final double LAST_CHUNK_WEIGHT = 0.5;
+
 	@Inject
 	private StepContext stepContext;
 
@@ -28,14 +49,100 @@ public class CheckpointAlgorithm extends AbstractCheckpointAlgorithm {
 	@BatchProperty
 	private String itemCount;
 
+	@Inject
+	@BatchProperty
+	private String checkpointIntervalMillis;
+
+	@Inject
+	@BatchProperty
+	private String chunkBytes;
+
+	private boolean isSetup = false;
+	private int chunkSize;
+	private int maxChunkSize;
+	private long intervalNanos;
+	private long targetBytes;
+	private int itemsRead;
+	private long chunkStart;
+	private double nanosPerItem;
+
+	public CheckpointAlgorithm() {
+	}
+
+	/**
+	 * Constructor for unit test.
+	 *
+	 * @param itemCount
+	 * @param checkpointIntervalMillis
+	 * @param chunkBytes
+	 */
+	CheckpointAlgorithm(String itemCount, String checkpointIntervalMillis, String chunkBytes) {
+		this.itemCount = itemCount;
+		this.checkpointIntervalMillis = checkpointIntervalMillis;
+		this.chunkBytes = chunkBytes;
+	}
+
 	@Override
 	public boolean isReadyToCheckpoint() throws Exception {
-		Metric[] metrics = stepContext.getMetrics();
-		for ( final Metric m : metrics ) {
-			if ( m.getType().equals( Metric.MetricType.READ_COUNT ) ) {
-				return m.getValue() % Integer.parseInt( itemCount ) == 0;
-			}
+		if ( !isSetup ) {
+			setup();
+			isSetup = true;
+		}
+		itemsRead++;
+		if ( itemsRead >= chunkSize ) {
+			return true;
+		}
+		return intervalNanos > 0 && System.nanoTime() - chunkStart >= intervalNanos;
+	}
+
+	@Override
+	public void beginCheckpoint() throws Exception {
+		chunkStart = System.nanoTime();
+	}
+
+	@Override
+	public void endCheckpoint() throws Exception {
+		long now = System.nanoTime();
+		if ( itemsRead > 0 && ( intervalNanos > 0 || targetBytes > 0 ) ) {
+			adaptChunkSize( now - chunkStart );
+		}
+		itemsRead = 0;
+		chunkStart = now;
+	}
+
+	private void setup() {
+		chunkSize = Integer.parseInt( itemCount );
+		maxChunkSize = chunkSize * MAX_CHUNK_SIZE_FACTOR;
+		intervalNanos = checkpointIntervalMillis == null || checkpointIntervalMillis.isEmpty()
+				? 0L : TimeUnit.MILLISECONDS.toNanos( Long.parseLong( checkpointIntervalMillis ) );
+		targetBytes = chunkBytes == null || chunkBytes.isEmpty() ? 0L : Long.parseLong( chunkBytes );
+		if ( chunkStart == 0 ) {
+			chunkStart = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Tune the size of the next chunks, using the duration of the chunk which just ended and the average size of the
+	 * documents written so far.
+	 *
+	 * @param chunkNanos the duration of the chunk, including the read, the document building and the write.
+	 */
+	private void adaptChunkSize(long chunkNanos) {
+		PartitionContextData partitionData = (PartitionContextData) stepContext.getTransientUserData();
+		long size = maxChunkSize;
+		if ( intervalNanos > 0 ) {
+			double lastNanosPerItem = (double) chunkNanos / itemsRead;
+			nanosPerItem = nanosPerItem == 0
+					? lastNanosPerItem
+					: LAST_CHUNK_WEIGHT * lastNanosPerItem + ( 1 - LAST_CHUNK_WEIGHT ) * nanosPerItem;
+			size = Math.min( size, (long) ( intervalNanos / Math.max( 1d, nanosPerItem ) ) );
+		}
+		if ( targetBytes > 0 && partitionData.getAverageDocumentBytes() > 0 ) {
+			size = Math.min( size, targetBytes / partitionData.getAverageDocumentBytes() );
 		}
-		throw new Exception( "Metric READ_COUNT not found" );
+		chunkSize = (int) Math.max( 1, size );
+		partitionData.getPartitionProgress().setChunkSize( chunkSize );
+		LOGGER.debugf( "[partitionId=%d] chunk size set to %d.", partitionData.getPartitionProgress().getPartitionId(),
+				chunkSize );
 	}
 }
@@ -0,0 +1,296 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.hibernate.search.engine.metadata.impl.EmbeddedTypeMetadata;
+import org.hibernate.search.engine.metadata.impl.TypeMetadata;
+import org.hibernate.search.jsr352.massindexing.impl.util.ReferenceEntityCache;
+import org.hibernate.search.util.impl.ReflectionHelper;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.CompositeType;
+import org.hibernate.type.Type;
+import org.jboss.logging.Logger;
+
+/**
+ * Pre-processing stage initializing, for a block of entities, all the associations that the document builder will
+ * traverse: the {@code @IndexedEmbedded} proxies and collections. Instead of letting the document builder initialize
+ * them one by one, they are grouped by entity type (for proxies) or by collection role (for collections), then each
+ * group is loaded with a single query. The metadata are walked level by level, so that nested embedded associations
+ * are initialized as groups too.
+ * <p>
+ * The proxies of the reference entities found in the job's reference entity cache are not loaded: they are initialized
+ * with the cached entities, whose embedded associations are initialized already, so nothing is loaded below them.
+ * <p>
+ * The entities must be attached to the given session, which must not be used by another thread in the meantime.
+ *
+ * @author Mincong Huang
+ */
+public class EmbeddedAssociationInitializer {
+
+	private static final Logger LOGGER = Logger.getLogger( EmbeddedAssociationInitializer.class );
+
+	/**
+	 * The maximum number of values bound in a single {@code IN} predicate.
+	 */
+	private static final int MAX_IN_SIZE = 1000;
+
+	private final Session session;
+	private final SessionFactoryImplementor sessionFactory;
+	private final ReferenceEntityCache referenceEntityCache;
+
+	private long initializedCount;
+	private long queryCount;
+
+	public EmbeddedAssociationInitializer(Session session) {
+		this( session, new ReferenceEntityCache() );
+	}
+
+	public EmbeddedAssociationInitializer(Session session, ReferenceEntityCache referenceEntityCache) {
+		this.session = session;
+		this.sessionFactory = ( (SessionImplementor) session ).getFactory();
+		this.referenceEntityCache = referenceEntityCache;
+	}
+
+	/**
+	 * Initialize the embedded associations of the given entities.
+	 *
+	 * @param entities the entities of the same indexed type, attached to the session
+	 * @param typeMetadata the index metadata of this type
+	 * @return the number of lazy loads avoided, i.e. the number of proxies and collections initialized minus the number
+	 * of queries used to do so.
+	 */
+	public long initialize(Collection<?> entities, TypeMetadata typeMetadata) {
+		initializedCount = 0;
+		queryCount = 0;
+		initializeLevel( entities, typeMetadata );
+		LOGGER.debugf( "%d proxies and collections initialized using %d queries.", initializedCount, queryCount );
+		return Math.max( 0, initializedCount - queryCount );
+	}
+
+	/**
+	 * Initialize the embedded associations of the given owners, then those of the embedded values, level by level. A
+	 * value shared by several owners, e.g. a proxy of the same entity, is only handled once.
+	 */
+	private void initializeLevel(Collection<?> owners, TypeMetadata typeMetadata) {
+		for ( EmbeddedTypeMetadata embedded : typeMetadata.getEmbeddedTypeMetadata() ) {
+			List<Object> values = new ArrayList<>();
+			Set<Object> distinctValues = Collections.newSetFromMap( new IdentityHashMap<>() );
+			for ( Object owner : owners ) {
+				Object value = ReflectionHelper.getMemberValue( unproxy( owner ), embedded.getEmbeddedGetter() );
+				if ( value != null && distinctValues.add( value ) ) {
+					values.add( value );
+				}
+			}
+			Set<Object> cachedValues = initializeGroups( values );
+
+			if ( !embedded.getEmbeddedTypeMetadata().isEmpty() ) {
+				List<Object> children = new ArrayList<>();
+				Set<Object> distinctChildren = Collections.newSetFromMap( new IdentityHashMap<>() );
+				for ( Object value : values ) {
+					if ( !cachedValues.contains( value ) ) {
+						addElements( value, children, distinctChildren );
+					}
+				}
+				if ( !children.isEmpty() ) {
+					initializeLevel( children, embedded );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Group the uninitialized proxies by entity name and the uninitialized collections by role, then initialize each
+	 * group with a single query. The proxies of cached reference entities are initialized from the cache instead. The
+	 * given values must be distinct, so that each proxy or collection is counted once.
+	 *
+	 * @return the proxies initialized from the reference entity cache.
+	 */
+	private Set<Object> initializeGroups(List<Object> values) {
+		Map<String, Set<Serializable>> proxyIds = new LinkedHashMap<>();
+		Map<String, Set<Serializable>> collectionKeys = new LinkedHashMap<>();
+		List<Object> proxies = new ArrayList<>();
+		List<Object> collections = new ArrayList<>();
+		Set<Object> cachedValues = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+		for ( Object value : values ) {
+			if ( value instanceof HibernateProxy ) {
+				LazyInitializer lazyInitializer = ( (HibernateProxy) value ).getHibernateLazyInitializer();
+				if ( !lazyInitializer.isUninitialized() ) {
+					continue;
+				}
+				Object cached = referenceEntityCache.get( lazyInitializer.getEntityName(),
+						lazyInitializer.getIdentifier() );
+				if ( cached != null ) {
+					// the cached entity is detached and read-only: the proxy only delegates to it
+					lazyInitializer.setImplementation( cached );
+					cachedValues.add( value );
+				}
+				else {
+					proxyIds.computeIfAbsent( lazyInitializer.getEntityName(), k -> new LinkedHashSet<>() )
+							.add( lazyInitializer.getIdentifier() );
+					proxies.add( value );
+				}
+			}
+			else if ( value instanceof PersistentCollection ) {
+				PersistentCollection collection = (PersistentCollection) value;
+				if ( !collection.wasInitialized() && collection.getRole() != null ) {
+					collectionKeys.computeIfAbsent( collection.getRole(), k -> new LinkedHashSet<>() )
+							.add( collection.getKey() );
+					collections.add( value );
+				}
+			}
+		}
+
+		proxyIds.forEach( this::loadEntities );
+		collectionKeys.forEach( this::loadCollections );
+
+		// the entities and collections are now in the persistence context: no more query is needed here
+		for ( Object proxy : proxies ) {
+			Hibernate.initialize( proxy );
+		}
+		for ( Object collection : collections ) {
+			Hibernate.initialize( collection );
+		}
+		initializedCount += proxies.size() + collections.size() + cachedValues.size();
+		return cachedValues;
+	}
+
+	private void loadEntities(String entityName, Set<Serializable> ids) {
+		ClassMetadata metadata = sessionFactory.getClassMetadata( entityName );
+		String idName = metadata.getIdentifierPropertyName();
+		if ( idName == null ) {
+			return;
+		}
+		for ( List<Serializable> block : split( ids ) ) {
+			session.createCriteria( entityName )
+					.add( Restrictions.in( idName, block ) )
+					.setReadOnly( true )
+					.list();
+			queryCount++;
+		}
+	}
+
+	/**
+	 * Load the owners of the collections of the given role with their collection fetched. The owners are selected by
+	 * the property holding the collection key: their ID, or the property referenced by the collection key column.
+	 */
+	private void loadCollections(String role, Set<Serializable> keys) {
+		CollectionPersister collectionPersister = sessionFactory.getCollectionPersister( role );
+		EntityPersister ownerPersister = collectionPersister.getOwnerEntityPersister();
+		ClassMetadata ownerMetadata = ownerPersister.getClassMetadata();
+		String path = findCollectionPath( role, ownerMetadata.getPropertyNames(), ownerMetadata.getPropertyTypes(),
+				"" );
+		String keyName = collectionPersister.getCollectionType().getLHSPropertyName();
+		if ( keyName == null ) {
+			keyName = ownerMetadata.getIdentifierPropertyName();
+		}
+		if ( path == null || keyName == null ) {
+			return;
+		}
+		String hql = "select distinct o from " + ownerPersister.getEntityName() + " o"
+				+ " left join fetch o." + path
+				+ " where o." + keyName + " in (:keys)";
+		for ( List<Serializable> block : split( keys ) ) {
+			session.createQuery( hql )
+					.setParameterList( "keys", block )
+					.setReadOnly( true )
+					.list();
+			queryCount++;
+		}
+	}
+
+	/**
+	 * Find the path of the property holding the collections of the given role, possibly nested in embeddables.
+	 *
+	 * @return the property path, or null if no property holds these collections.
+	 */
+	private static String findCollectionPath(String role, String[] propertyNames, Type[] propertyTypes,
+			String prefix) {
+		for ( int i = 0; i < propertyNames.length; i++ ) {
+			Type type = propertyTypes[i];
+			if ( type.isCollectionType() && role.equals( ( (CollectionType) type ).getRole() ) ) {
+				return prefix + propertyNames[i];
+			}
+			if ( type.isComponentType() ) {
+				CompositeType componentType = (CompositeType) type;
+				String path = findCollectionPath( role, componentType.getPropertyNames(), componentType.getSubtypes(),
+						prefix + propertyNames[i] + "." );
+				if ( path != null ) {
+					return path;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static List<List<Serializable>> split(Set<Serializable> values) {
+		List<List<Serializable>> blocks = new ArrayList<>();
+		List<Serializable> block = new ArrayList<>();
+		for ( Serializable value : values ) {
+			block.add( value );
+			if ( block.size() == MAX_IN_SIZE ) {
+				blocks.add( block );
+				block = new ArrayList<>();
+			}
+		}
+		if ( !block.isEmpty() ) {
+			blocks.add( block );
+		}
+		return blocks;
+	}
+
+	private static void addElements(Object value, List<Object> elements, Set<Object> distinctElements) {
+		Collection<?> values;
+		if ( value instanceof Map ) {
+			values = ( (Map<?, ?>) value ).values();
+		}
+		else if ( value instanceof Collection ) {
+			values = (Collection<?>) value;
+		}
+		else if ( value instanceof Object[] ) {
+			values = Arrays.asList( (Object[]) value );
+		}
+		else {
+			values = Arrays.asList( value );
+		}
+		for ( Object element : values ) {
+			if ( element != null && distinctElements.add( element ) ) {
+				elements.add( element );
+			}
+		}
+	}
+
+	private static Object unproxy(Object value) {
+		if ( value instanceof HibernateProxy ) {
+			return ( (HibernateProxy) value ).getHibernateLazyInitializer().getImplementation();
+		}
+		return value;
+	}
+}
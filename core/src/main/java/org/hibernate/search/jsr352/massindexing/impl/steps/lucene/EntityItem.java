@@ -0,0 +1,39 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import java.io.Serializable;
+
+/**
+ * Item passed from the item reader to the item processor: an entity and its identifier, already extracted by the
+ * reader for the checkpoint.
+ *
+ * @author Mincong Huang
+ */
+public class EntityItem {
+
+	private final Object entity;
+	private final Serializable id;
+
+	public EntityItem(Object entity, Serializable id) {
+		this.entity = entity;
+		this.id = id;
+	}
+
+	public Object getEntity() {
+		return entity;
+	}
+
+	public Serializable getId() {
+		return id;
+	}
+
+	@Override
+	public String toString() {
+		return "EntityItem [entity=" + entity + ", id=" + id + "]";
+	}
+}
@@ -7,6 +7,18 @@
 package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.batch.api.BatchProperty;
 import javax.batch.api.chunk.AbstractItemReader;
@@ -15,16 +27,26 @@ import javax.batch.runtime.context.StepContext;
 import javax.inject.Inject;
 import javax.persistence.EntityManagerFactory;
 
+import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.Query;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.StatelessSession;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.search.engine.spi.DocumentBuilderIndexedEntity;
+import org.hibernate.search.hcore.util.impl.ContextHelper;
 import org.hibernate.search.jsr352.massindexing.impl.JobContextData;
+import org.hibernate.search.jsr352.massindexing.impl.util.IdRangeQueue;
+import org.hibernate.search.jsr352.massindexing.impl.util.IndexedEmbeddedUtil;
 import org.hibernate.search.jsr352.massindexing.impl.util.PartitionBound;
+import org.hibernate.search.jsr352.massindexing.impl.util.PartitionedHql;
 import org.jboss.logging.Logger;
 
 /**
@@ -41,6 +63,38 @@ import org.jboss.logging.Logger;
  * <li>partitionId = 4, entityType = Employee, range = [3000, 4000[
  * <li>partitionId = 5, entityType = Employee, range = [4000, null[
  * </ul>
+ * <p>
+ * When a page size is given, the reader does not keep a scrollable result open for the whole partition. Instead, it
+ * reads the partition by keyset pages: each page selects at most {@code pageSize} entities whose ID is greater than the
+ * last ID read, ordered by ID, so no cursor is held between two pages. The entities of each page are loaded in the
+ * session shared with the item processor: the lazy associations traversed during the document building are then
+ * resolved by this session.
+ * <p>
+ * When entities are loaded by IDs, the keyset pages only select the IDs, using a short-lived stateless session. The
+ * entities of each page are then loaded with a single query in the session shared with the item processor, optionally
+ * fetching the embedded to-one associations with a join, or initializing the embedded associations beforehand for the
+ * whole page by the {@link EmbeddedAssociationInitializer}. In both cases, the cached reference entities are taken from
+ * the job's reference entity cache instead of being loaded.
+ * <p>
+ * When several document builder threads are requested, the reader also creates the pool of threads to which the item
+ * processor hands the entities. The pool queue is bounded by the checkpoint frequency: once it is full, the partition
+ * thread builds the documents itself, which slows down the reading. The embedded associations of each keyset page are
+ * then initialized before the page is read, so that the builder threads do not need the partition session. The
+ * documents of the entities whose graph is not fully initialized are built while holding the lock of this session, so
+ * the reader also locks this session while it loads entities in it.
+ * <p>
+ * When partitions steal their work, the partition unit is not fixed: the reader claims ID ranges of its entity type
+ * from the {@link IdRangeQueue} of the job, one after another, until the queue is empty. The checkpoint then contains
+ * the range being read along with the last ID read, and the ranges completed are reported to the step progress once
+ * their last chunk is committed.
+ * <p>
+ * When the item writer defers the flush of the index, or writes behind the partition thread, the reader only
+ * checkpoints the progress of the items whose documents are durable: the checkpoint of each chunk is kept pending until
+ * the writer acknowledges this chunk, and the last durable checkpoint is returned meanwhile.
+ * <p>
+ * When the HQL selection is partitioned, the user's HQL is used as a subquery of a query restricted to the partition
+ * bound and ordered by ID, see {@link PartitionedHql}. The partition is then read and checkpointed like a criteria
+ * selection.
  *
  * @author Mincong Huang
  */
@@ -54,10 +108,22 @@ public class EntityReader extends AbstractItemReader {
 	@Inject
 	private StepContext stepContext;
 
+	@Inject
+	@BatchProperty
+	private String batchInitializeEmbedded;
+
 	@Inject
 	@BatchProperty
 	private String cacheable;
 
+	@Inject
+	@BatchProperty
+	private String cacheMode;
+
+	@Inject
+	@BatchProperty
+	private String documentBuilderThreads;
+
 	@Inject
 	@BatchProperty
 	private String entityName;
@@ -70,14 +136,42 @@ public class EntityReader extends AbstractItemReader {
 	@BatchProperty
 	private String hql;
 
+	@Inject
+	@BatchProperty
+	private String itemCount;
+
+	@Inject
+	@BatchProperty
+	private String joinFetchEmbedded;
+
+	@Inject
+	@BatchProperty
+	private String loadEntitiesByIds;
+
 	@Inject
 	@BatchProperty
 	private String maxResults;
 
+	@Inject
+	@BatchProperty
+	private String maxSessionEntities;
+
+	@Inject
+	@BatchProperty
+	private String pageSize;
+
+	@Inject
+	@BatchProperty
+	private String partitionHql;
+
 	@Inject
 	@BatchProperty(name = "partitionId")
 	private String partitionIdStr;
 
+	@Inject
+	@BatchProperty
+	private String workStealing;
+
 	private EntityManagerFactory emf;
 
 	private Class<?> entityType;
@@ -87,6 +181,22 @@ public class EntityReader extends AbstractItemReader {
 	private ScrollableResults scroll;
 	private SessionFactory sessionFactory;
 
+	private JobContextData jobData;
+	private PartitionBound bound;
+	private String idName;
+	private int readCount;
+	private Iterator<?> page;
+	private boolean lastPageFetched;
+	private List<String> fetchPaths = Collections.emptyList();
+	private DocumentBuilderIndexedEntity docBuilder;
+	private EmbeddedAssociationInitializer associationInitializer;
+	private IdRangeQueue rangeQueue;
+	private Integer rangeIndex;
+	private Set<Integer> rangesCompleted = new HashSet<>();
+	private Deque<PendingCheckpoint> pendingCheckpoints = new ArrayDeque<>();
+	private int sessionEntityThreshold;
+	private PartitionContextData partitionData;
+
 	public EntityReader() {
 	}
 
@@ -98,6 +208,7 @@ public class EntityReader extends AbstractItemReader {
 	 * @param fetchSize
 	 * @param hql
 	 * @param maxResults
+	 * @param pageSize
 	 * @param partitionIdStr
 	 */
 	EntityReader(String cacheable,
@@ -105,15 +216,64 @@ public class EntityReader extends AbstractItemReader {
 			String fetchSize,
 			String hql,
 			String maxResults,
+			String pageSize,
 			String partitionIdStr) {
 		this.cacheable = cacheable;
 		this.entityName = entityName;
 		this.fetchSize = fetchSize;
 		this.hql = hql;
 		this.maxResults = maxResults;
+		this.pageSize = pageSize;
 		this.partitionIdStr = partitionIdStr;
 	}
 
+	/**
+	 * Constructor for unit test, stealing the ID ranges of the partition.
+	 *
+	 * @param cacheable
+	 * @param entityName
+	 * @param fetchSize
+	 * @param hql
+	 * @param maxResults
+	 * @param pageSize
+	 * @param partitionIdStr
+	 * @param workStealing
+	 */
+	EntityReader(String cacheable,
+			String entityName,
+			String fetchSize,
+			String hql,
+			String maxResults,
+			String pageSize,
+			String partitionIdStr,
+			String workStealing) {
+		this( cacheable, entityName, fetchSize, hql, maxResults, pageSize, partitionIdStr );
+		this.workStealing = workStealing;
+	}
+
+	/**
+	 * Constructor for unit test, loading the entities of each keyset page by IDs.
+	 *
+	 * @param cacheable
+	 * @param entityName
+	 * @param fetchSize
+	 * @param maxResults
+	 * @param pageSize
+	 * @param partitionIdStr
+	 * @param joinFetchEmbedded
+	 */
+	EntityReader(String cacheable,
+			String entityName,
+			String fetchSize,
+			String maxResults,
+			String pageSize,
+			String partitionIdStr,
+			String joinFetchEmbedded) {
+		this( cacheable, entityName, fetchSize, null, maxResults, pageSize, partitionIdStr );
+		this.loadEntitiesByIds = String.valueOf( true );
+		this.joinFetchEmbedded = joinFetchEmbedded;
+	}
+
 	/**
 	 * The checkpointInfo method returns the current checkpoint data for this reader. It is called before a chunk
 	 * checkpoint is committed.
@@ -125,7 +285,34 @@ public class EntityReader extends AbstractItemReader {
 	public Serializable checkpointInfo() throws Exception {
 		LOGGER.debug( "checkpointInfo() called. "
 				+ "Saving last read ID to batch runtime..." );
-		return checkpointId;
+		PartitionContextData partitionData = (PartitionContextData) stepContext.getTransientUserData();
+		Integer currentRange = bound == null ? null : rangeIndex;
+		Serializable checkpoint = rangeQueue == null ? checkpointId : new RangeCheckpoint( currentRange, checkpointId );
+		pendingCheckpoints.add( new PendingCheckpoint( partitionData.getChunksWritten(), checkpoint,
+				new HashSet<>( rangesCompleted ), currentRange ) );
+		rangesCompleted.clear();
+
+		// the documents of this chunk are built, so the entities loaded for them are not needed anymore, unless they
+		// belong to a keyset page not read entirely: the session is then cleared before the next page is fetched
+		if ( page == null ) {
+			clearSession();
+		}
+
+		// the items read since the last durable chunk may not be in the index yet
+		while ( !pendingCheckpoints.isEmpty()
+				&& pendingCheckpoints.peek().chunk <= partitionData.getChunksDurable() ) {
+			PendingCheckpoint durable = pendingCheckpoints.poll();
+			partitionData.setDurableCheckpoint( durable.checkpoint );
+			if ( rangeQueue != null ) {
+				PartitionProgress progress = partitionData.getPartitionProgress();
+				progress.rangesCompleted( durable.completedRanges );
+				progress.setCurrentRange( durable.currentRange );
+			}
+		}
+		if ( partitionData.isCompleted() ) {
+			partitionData.getPartitionProgress().setCompleted( true );
+		}
+		return partitionData.getDurableCheckpoint();
 	}
 
 	/**
@@ -137,22 +324,28 @@ public class EntityReader extends AbstractItemReader {
 	public void close() throws Exception {
 		LOGGER.debug( "closing everything..." );
 		try {
-			scroll.close();
-			LOGGER.debug( "Scrollable results closed." );
+			if ( scroll != null ) {
+				scroll.close();
+				LOGGER.debug( "Scrollable results closed." );
+			}
 		}
 		catch (Exception e) {
 			LOGGER.error( e );
 		}
 		try {
-			ss.close();
-			LOGGER.debug( "Stateless session closed." );
+			if ( ss != null ) {
+				ss.close();
+				LOGGER.debug( "Stateless session closed." );
+			}
 		}
 		catch (Exception e) {
 			LOGGER.error( e );
 		}
 		try {
-			session.close();
-			LOGGER.debug( "Session closed." );
+			if ( session != null ) {
+				session.close();
+				LOGGER.debug( "Session closed." );
+			}
 		}
 		catch (Exception e) {
 			LOGGER.error( e );
@@ -160,7 +353,15 @@ public class EntityReader extends AbstractItemReader {
 		// reset the chunk work count to avoid over-count in item collector
 		// release session
 		PartitionContextData partitionData = (PartitionContextData) stepContext.getTransientUserData();
+		if ( associationInitializer != null ) {
+			LOGGER.infof( "[partitionId=%s] %d lazy loads avoided by the batch initialization of embedded associations.",
+					partitionIdStr, partitionData.getLazyLoadsAvoided() );
+		}
 		partitionData.setSession( null );
+		if ( partitionData.getDocumentBuilderPool() != null ) {
+			partitionData.getDocumentBuilderPool().shutdownNow();
+			partitionData.setDocumentBuilderPool( null );
+		}
 		stepContext.setPersistentUserData( partitionData );
 	}
 
@@ -178,31 +379,93 @@ public class EntityReader extends AbstractItemReader {
 		final int partitionId = Integer.parseInt( partitionIdStr );
 
 		LOGGER.debugf( "[partitionId=%d] open reader for entity %s ...", (Integer) partitionId, entityName );
-		JobContextData jobData = (JobContextData) jobContext.getTransientUserData();
+		jobData = (JobContextData) jobContext.getTransientUserData();
 		entityType = jobData.getIndexedType( entityName );
-		PartitionBound bound = jobData.getPartitionBound( partitionId );
+		// the partition data of the previous execution is saved at each checkpoint, so it tells the completion even if
+		// the step progress of the previous execution was lost
+		PartitionContextData previousData = checkpointId != null && !isWorkStealing()
+				? (PartitionContextData) stepContext.getPersistentUserData() : null;
+		if ( jobData.isPartitionCompleted( partitionId )
+				|| previousData != null && previousData.getPartitionProgress().isCompleted() ) {
+			skipCompletedPartition( partitionId, checkpointId );
+			return;
+		}
+		final boolean restarted = checkpointId != null;
+		final Serializable originalCheckpoint = checkpointId;
+		if ( isWorkStealing() ) {
+			rangeQueue = jobData.getRangeQueue();
+			if ( restarted ) {
+				RangeCheckpoint rangeCheckpoint = (RangeCheckpoint) checkpointId;
+				rangeIndex = rangeCheckpoint.getRangeIndex();
+				checkpointId = rangeCheckpoint.getLastId();
+			}
+			else {
+				rangeIndex = rangeQueue.claim( entityName );
+			}
+			bound = rangeIndex == null ? null : rangeQueue.getRange( rangeIndex );
+		}
+		else {
+			bound = jobData.getPartitionBound( partitionId );
+		}
 		LOGGER.debug( bound );
 
 		emf = jobData.getEntityManagerFactory();
 		sessionFactory = emf.unwrap( SessionFactory.class );
-		ss = sessionFactory.openStatelessSession();
+		idName = sessionFactory.getClassMetadata( entityType )
+				.getIdentifierPropertyName();
 		session = sessionFactory.openSession();
+		session.setCacheMode( getCacheMode() );
 
 		PartitionContextData partitionData = null;
 		// HQL approach
 		// In this approach, the checkpoint mechanism is disabled, because we
-		// don't know if the selection is ordered by ID ascendingly in the query.
-		if ( hql != null && !hql.isEmpty() ) {
+		// don't know if the selection is ordered by ID ascendingly in the query,
+		// unless the HQL is wrapped into a query partitioned and ordered by ID.
+		String subquery = hql != null && !hql.isEmpty() && Boolean.parseBoolean( partitionHql )
+				? PartitionedHql.toSubquery( hql ) : null;
+		if ( subquery != null ) {
+			this.checkpointId = checkpointId;
+			ss = sessionFactory.openStatelessSession();
+			scroll = buildScrollUsingPartitionedHQL( ss, subquery, checkpointId );
+			partitionData = restarted
+					? (PartitionContextData) stepContext.getPersistentUserData()
+					: new PartitionContextData( partitionId, entityName );
+		}
+		else if ( hql != null && !hql.isEmpty() ) {
 			// TODO should I worry about the Lucene AddWork? If this is a
 			// restart, will it create duplicate index for the same entity,
 			// since there's no purge?
+			ss = sessionFactory.openStatelessSession();
 			scroll = buildScrollUsingHQL( ss, hql );
 			partitionData = new PartitionContextData( partitionId, entityName );
 		}
 		// Criteria approach
 		else {
-			scroll = buildScrollUsingCriteria( ss, bound, checkpointId, jobData );
-			if ( checkpointId == null ) {
+			this.checkpointId = checkpointId;
+			if ( isKeysetPagination() ) {
+				// pages are fetched lazily, starting after the last ID read
+				page = Collections.emptyIterator();
+				docBuilder = ContextHelper.getSearchIntegrator( session )
+						.getIndexBindings()
+						.get( entityType )
+						.getDocumentBuilder();
+				final boolean byIds = Boolean.parseBoolean( loadEntitiesByIds );
+				if ( byIds && Boolean.parseBoolean( joinFetchEmbedded ) ) {
+					fetchPaths = buildFetchPaths();
+				}
+				// the document builder threads get entities whose embedded associations are initialized
+				if ( byIds && Boolean.parseBoolean( batchInitializeEmbedded ) || getDocumentBuilderThreads() > 1 ) {
+					associationInitializer = new EmbeddedAssociationInitializer( session,
+							jobData.getReferenceEntityCache() );
+				}
+			}
+			else {
+				ss = sessionFactory.openStatelessSession();
+				if ( bound != null ) {
+					scroll = buildScrollUsingCriteria( ss, checkpointId );
+				}
+			}
+			if ( !restarted ) {
 				partitionData = new PartitionContextData( partitionId, entityName );
 			}
 			else {
@@ -211,23 +474,135 @@ public class EntityReader extends AbstractItemReader {
 		}
 
 		partitionData.setSession( session );
+		partitionData.resetChunks();
+		partitionData.setDurableCheckpoint( restarted ? originalCheckpoint : null );
+		partitionData.setDocumentBuilderPool( buildDocumentBuilderPool( partitionId ) );
 		stepContext.setTransientUserData( partitionData );
+		// saved by the batch runtime at each checkpoint, not only when the reader is closed
+		stepContext.setPersistentUserData( partitionData );
+		this.partitionData = partitionData;
+
+		if ( maxSessionEntities != null && !maxSessionEntities.isEmpty() ) {
+			sessionEntityThreshold = Integer.parseInt( maxSessionEntities );
+		}
+	}
+
+	/**
+	 * Open a partition completed by a previous execution of the job, without opening any session: no entity is read.
+	 */
+	private void skipCompletedPartition(int partitionId, Serializable checkpointId) {
+		LOGGER.infof( "[partitionId=%d] completed by a previous execution, skipped.", (Integer) partitionId );
+		PartitionContextData partitionData = (PartitionContextData) stepContext.getPersistentUserData();
+		if ( partitionData == null ) {
+			partitionData = new PartitionContextData( partitionId, entityName );
+		}
+		partitionData.resetChunks();
+		partitionData.setDurableCheckpoint( checkpointId );
+		partitionData.setAllItemsRead( true );
+		partitionData.getPartitionProgress().setCompleted( true );
+		stepContext.setTransientUserData( partitionData );
+		this.partitionData = partitionData;
+	}
+
+	/**
+	 * Clear the session shared with the item processor, so that the entities loaded for the documents already built
+	 * do not accumulate in the persistence context until the end of the partition. The documents being built by the
+	 * document builder threads are awaited first. If the current keyset page is not read entirely, its remaining
+	 * entities become detached, so the rest of the page is fetched again, starting after the last ID read.
+	 *
+	 * @throws InterruptedException if the partition thread is interrupted while waiting for the documents.
+	 */
+	private void clearSession() throws InterruptedException {
+		if ( session == null ) {
+			return;
+		}
+		partitionData.awaitDocuments();
+		// the session may be used concurrently by the document builder threads
+		synchronized ( session ) {
+			session.clear();
+		}
+		if ( page != null && page.hasNext() ) {
+			page = Collections.emptyIterator();
+			lastPageFetched = false;
+		}
+	}
+
+	/**
+	 * @return true if the persistence context of the session reached the maximum number of entities.
+	 */
+	private boolean isSessionFull() {
+		return sessionEntityThreshold > 0
+				&& ( (SessionImplementor) session ).getPersistenceContext()
+						.getNumberOfManagedEntities() >= sessionEntityThreshold;
+	}
+
+	/**
+	 * Create the pool of threads building the Lucene documents of this partition.
+	 *
+	 * @return the pool, or null if the documents are built by the partition thread.
+	 */
+	private ExecutorService buildDocumentBuilderPool(int partitionId) {
+		final int threads = getDocumentBuilderThreads();
+		// the entities read through a scrollable result are not initialized beforehand
+		if ( threads <= 1 || page == null ) {
+			return null;
+		}
+		LOGGER.debugf( "[partitionId=%d] %d document builder threads.", (Integer) partitionId, (Integer) threads );
+		final AtomicInteger threadCount = new AtomicInteger();
+		return new ThreadPoolExecutor( threads, threads,
+				0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>( Math.max( 1, Integer.parseInt( itemCount ) ) ),
+				r -> {
+					String name = "BatchIndexingJob-" + entityName + "-" + partitionId
+							+ "-documentBuilder-" + threadCount.incrementAndGet();
+					Thread thread = new Thread( r, name );
+					thread.setDaemon( true );
+					return thread;
+				},
+				new ThreadPoolExecutor.CallerRunsPolicy() );
+	}
+
+	private int getDocumentBuilderThreads() {
+		return documentBuilderThreads == null || documentBuilderThreads.isEmpty()
+				? 1 : Integer.parseInt( documentBuilderThreads );
 	}
 
 	private ScrollableResults buildScrollUsingHQL(StatelessSession ss, String HQL) {
 		return ss.createQuery( HQL )
 				.setReadOnly( true )
 				.setCacheable( Boolean.parseBoolean( cacheable ) )
+				.setCacheMode( getCacheMode() )
 				.setFetchSize( Integer.parseInt( fetchSize ) )
 				.setMaxResults( Integer.parseInt( maxResults ) )
 				.scroll( ScrollMode.FORWARD_ONLY );
 	}
 
-	private ScrollableResults buildScrollUsingCriteria(StatelessSession ss,
-			PartitionBound unit, Object checkpointId, JobContextData jobData) {
-		String idName = sessionFactory.getClassMetadata( entityType )
-				.getIdentifierPropertyName();
+	/**
+	 * Build the scroll of the entities selected by the user's HQL in the partition bound, ordered by ID, and starting
+	 * after the last ID read if any.
+	 */
+	private ScrollableResults buildScrollUsingPartitionedHQL(StatelessSession ss, String subquery,
+			Object checkpointId) {
+		Query query = ss.createQuery( PartitionedHql.selectEntities( subquery, entityName, idName, bound,
+				checkpointId != null ) );
+		if ( bound.getLowerBound() != null ) {
+			query.setParameter( PartitionedHql.LOWER_BOUND, bound.getLowerBound() );
+		}
+		if ( bound.getUpperBound() != null ) {
+			query.setParameter( PartitionedHql.UPPER_BOUND, bound.getUpperBound() );
+		}
+		if ( checkpointId != null ) {
+			query.setParameter( PartitionedHql.LAST_ID, checkpointId );
+		}
+		return query.setReadOnly( true )
+				.setCacheable( Boolean.parseBoolean( cacheable ) )
+				.setCacheMode( getCacheMode() )
+				.setFetchSize( Integer.parseInt( fetchSize ) )
+				.setMaxResults( Integer.parseInt( maxResults ) )
+				.scroll( ScrollMode.FORWARD_ONLY );
+	}
 
+	private ScrollableResults buildScrollUsingCriteria(StatelessSession ss, Object checkpointId) {
 		Criteria criteria = ss.createCriteria( entityType );
 
 		// build criteria using checkpoint ID
@@ -235,7 +610,133 @@ public class EntityReader extends AbstractItemReader {
 			criteria.add( Restrictions.ge( idName, checkpointId ) );
 		}
 
+		// the ranges stolen before by this partition count in its maximum number of results
+		return addRestrictions( criteria )
+				.setFetchSize( Integer.parseInt( fetchSize ) )
+				.setMaxResults( Integer.parseInt( maxResults ) - readCount )
+				.scroll( ScrollMode.FORWARD_ONLY );
+	}
+
+	/**
+	 * Fetch the next keyset page of the partition. The page starts strictly after the last ID read, which is also the
+	 * checkpoint ID. Its entities are loaded in the session shared with the item processor, either directly or by IDs.
+	 *
+	 * @return the entities of the next page, ordered by ID.
+	 */
+	private List<?> fetchNextPage() {
+		final int limit = Math.min( Integer.parseInt( pageSize ),
+				Integer.parseInt( maxResults ) - readCount );
+		if ( limit <= 0 ) {
+			return Collections.emptyList();
+		}
+		if ( Boolean.parseBoolean( loadEntitiesByIds ) ) {
+			List<?> ids = fetchNextPageIds( limit );
+			lastPageFetched = ids.size() < limit;
+			LOGGER.debugf( "%d IDs fetched after ID %s", ids.size(), checkpointId );
+			return loadEntities( ids );
+		}
+		// the session may be used concurrently by the document builder threads
+		synchronized ( session ) {
+			List<?> entities = buildPageCriteria( session.createCriteria( entityType ), limit ).list();
+			lastPageFetched = entities.size() < limit;
+			LOGGER.debugf( "%d entities fetched after ID %s", entities.size(), checkpointId );
+			initializeEmbedded( entities );
+			return entities;
+		}
+	}
+
+	/**
+	 * Fetch the IDs of the next keyset page of the partition, using a short-lived stateless session.
+	 *
+	 * @return the IDs of the next page, in ascending order.
+	 */
+	private List<?> fetchNextPageIds(int limit) {
+		StatelessSession pageSession = sessionFactory.openStatelessSession();
+		try {
+			return buildPageCriteria( pageSession.createCriteria( entityType ), limit )
+					.setProjection( Projections.id() )
+					.list();
+		}
+		finally {
+			try {
+				pageSession.close();
+			}
+			catch (Exception e) {
+				LOGGER.error( e );
+			}
+		}
+	}
+
+	/**
+	 * Restrict the given criteria to the next keyset page of the partition.
+	 */
+	private Criteria buildPageCriteria(Criteria criteria, int limit) {
+		if ( checkpointId != null ) {
+			criteria.add( Restrictions.gt( idName, checkpointId ) );
+		}
+		return addRestrictions( criteria )
+				.setFetchSize( limit )
+				.setMaxResults( limit );
+	}
+
+	/**
+	 * Load the entities of the given IDs with a single query, using the session shared with the item processor.
+	 *
+	 * @param ids the IDs of a keyset page
+	 * @return the entities, ordered by ID.
+	 */
+	private List<?> loadEntities(List<?> ids) {
+		if ( ids.isEmpty() ) {
+			return ids;
+		}
+		// the session may be used concurrently by the document builder threads
+		synchronized ( session ) {
+			Criteria criteria = session.createCriteria( entityType )
+					.add( Restrictions.in( idName, ids ) );
+			for ( String path : fetchPaths ) {
+				criteria.setFetchMode( path, FetchMode.JOIN );
+			}
+			List<?> entities = criteria.addOrder( Order.asc( idName ) )
+					.setReadOnly( true )
+					.setCacheable( Boolean.parseBoolean( cacheable ) )
+					.setCacheMode( getCacheMode() )
+					.list();
+			initializeEmbedded( entities );
+			return entities;
+		}
+	}
+
+	/**
+	 * Initialize the embedded associations of the given page of entities, if required. The caller must hold the lock
+	 * of the session.
+	 */
+	private void initializeEmbedded(List<?> entities) {
+		if ( associationInitializer != null && !entities.isEmpty() ) {
+			long avoided = associationInitializer.initialize( entities, docBuilder.getTypeMetadata() );
+			partitionData.lazyLoadsAvoided( avoided );
+		}
+	}
+
+	/**
+	 * Build the join fetch hints, using the to-one associations embedded in the index of the target entity type.
+	 * Collections are not join fetched, because it would multiply the rows selected for each entity. The cached
+	 * reference entities are not join fetched either: their proxies are resolved from the cache.
+	 */
+	private List<String> buildFetchPaths() {
+		List<String> paths = IndexedEmbeddedUtil.getToOneEmbeddedPaths( sessionFactory,
+				sessionFactory.getClassMetadata( entityType ),
+				docBuilder.getTypeMetadata(),
+				jobData.getReferenceEntityCache().getEntityNames() );
+		LOGGER.debugf( "join fetch paths for entity %s: %s", entityName, paths );
+		return paths;
+	}
+
+	/**
+	 * Restrict the given criteria to the partition bound and to the user's criteria, ordered by ID.
+	 */
+	private Criteria addRestrictions(Criteria criteria) {
 		// build criteria using partition unit
+		PartitionBound unit = bound;
 		if ( unit.isUniquePartition() ) {
 			// no bounds if the partition unit is unique
 		}
@@ -251,28 +752,105 @@ public class EntityReader extends AbstractItemReader {
 		}
 
 		// build criteria using job context data
-		jobData.getCriteria().forEach( c -> criteria.add( c ) );
+		jobData.getCriteria( entityType ).forEach( c -> criteria.add( c ) );
 
 		return criteria.addOrder( Order.asc( idName ) )
 				.setReadOnly( true )
 				.setCacheable( Boolean.parseBoolean( cacheable ) )
-				.setFetchSize( Integer.parseInt( fetchSize ) )
-				.setMaxResults( Integer.parseInt( maxResults ) )
-				.scroll( ScrollMode.FORWARD_ONLY );
+				.setCacheMode( getCacheMode() );
+	}
+
+	private CacheMode getCacheMode() {
+		return cacheMode == null || cacheMode.isEmpty() ? CacheMode.IGNORE : CacheMode.valueOf( cacheMode );
+	}
+
+	private boolean isWorkStealing() {
+		return Boolean.parseBoolean( workStealing ) && ( hql == null || hql.isEmpty() );
 	}
 
 	/**
-	 * Read item from database using JPA. Each read, there will be only one entity fetched.
+	 * Claim the next ID range of the entity type, and restart the reading from its lower bound. The number of entities
+	 * read is kept, since the maximum number of results applies to the whole partition, not to each range.
+	 *
+	 * @return true if a range is claimed, false if there's no more range to read.
+	 */
+	private boolean claimNextRange() {
+		rangesCompleted.add( rangeIndex );
+		rangeIndex = rangeQueue.claim( entityName );
+		if ( rangeIndex == null ) {
+			bound = null;
+			return false;
+		}
+		bound = rangeQueue.getRange( rangeIndex );
+		LOGGER.debugf( "[partitionId=%s] range %d claimed: %s", partitionIdStr, rangeIndex, bound );
+		checkpointId = null;
+		if ( isKeysetPagination() ) {
+			page = Collections.emptyIterator();
+			lastPageFetched = false;
+		}
+		else {
+			scroll.close();
+			scroll = buildScrollUsingCriteria( ss, null );
+		}
+		return true;
+	}
+
+	private boolean isMaxResultsReached() {
+		return readCount >= Integer.parseInt( maxResults );
+	}
+
+	private boolean isKeysetPagination() {
+		return pageSize != null && !pageSize.isEmpty() && Integer.parseInt( pageSize ) > 0;
+	}
+
+	/**
+	 * Read item from database using JPA. Each read, there will be only one entity fetched. The entity is returned with
+	 * its identifier, so that the item processor does not need to extract it again.
 	 *
 	 * @throws Exception thrown for any errors.
 	 */
 	@Override
 	public Object readItem() throws Exception {
 		LOGGER.debug( "Reading item ..." );
+		if ( isSessionFull() ) {
+			LOGGER.debugf( "[partitionId=%s] session cleared in the middle of a chunk.", partitionIdStr );
+			clearSession();
+		}
+		Object entity = readItemInRange();
+		// a partition which read its maximum number of results leaves the other ranges to the other partitions
+		while ( entity == null && rangeQueue != null && bound != null && !isMaxResultsReached()
+				&& claimNextRange() ) {
+			entity = readItemInRange();
+		}
+		if ( entity == null ) {
+			partitionData.setAllItemsRead( true );
+			return null;
+		}
+		return new EntityItem( entity, checkpointId );
+	}
+
+	private Object readItemInRange() throws InterruptedException {
 		Object entity = null;
 
-		if ( scroll.next() ) {
+		if ( bound == null ) {
+			LOGGER.debug( "no range to read." );
+		}
+		else if ( scroll == null ) {
+			if ( !page.hasNext() && !lastPageFetched ) {
+				// the entities of the previous page are not needed anymore once their documents are built
+				clearSession();
+				page = fetchNextPage().iterator();
+			}
+			if ( page.hasNext() ) {
+				entity = page.next();
+				readCount++;
+				checkpointId = (Serializable) emf.getPersistenceUnitUtil()
+						.getIdentifier( entity );
+			}
+		}
+		else if ( scroll.next() ) {
 			entity = scroll.get( 0 );
+			readCount++;
 			checkpointId = (Serializable) emf.getPersistenceUnitUtil()
 					.getIdentifier( entity );
 		}
@@ -281,4 +859,23 @@ public class EntityReader extends AbstractItemReader {
 		}
 		return entity;
 	}
+
+	/**
+	 * The checkpoint of a chunk, waiting for this chunk to be durable in the index.
+	 */
+	private static class PendingCheckpoint {
+
+		private final long chunk;
+		private final Serializable checkpoint;
+		private final Set<Integer> completedRanges;
+		private final Integer currentRange;
+
+		private PendingCheckpoint(long chunk, Serializable checkpoint, Set<Integer> completedRanges,
+				Integer currentRange) {
+			this.chunk = chunk;
+			this.checkpoint = checkpoint;
+			this.completedRanges = completedRanges;
+			this.currentRange = currentRange;
+		}
+	}
 }
@@ -0,0 +1,144 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.CompositeType;
+import org.hibernate.type.Type;
+
+/**
+ * Check whether the whole object graph reachable from an entity through its persistent properties is initialized. If
+ * so, the document builder can read the entity, including through custom field and class bridges, without ever using
+ * the session, so the document can be built by another thread than the one owning the session.
+ * <p>
+ * The check is conservative: an uninitialized proxy or collection anywhere in the graph, an entity without metadata, or
+ * an embeddable holding associations makes the graph count as not initialized.
+ *
+ * @author Mincong Huang
+ */
+public class InitializedGraphChecker {
+
+	private final SessionFactoryImplementor sessionFactory;
+
+	public InitializedGraphChecker(SessionFactoryImplementor sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	/**
+	 * @param entity the entity, attached to a session
+	 * @return true if every entity and collection reachable from the given entity is initialized.
+	 */
+	public boolean isInitialized(Object entity) {
+		return isEntityInitialized( entity, Collections.newSetFromMap( new IdentityHashMap<>() ) );
+	}
+
+	private boolean isEntityInitialized(Object value, Set<Object> visited) {
+		if ( value == null ) {
+			return true;
+		}
+		Object entity = value;
+		if ( value instanceof HibernateProxy ) {
+			LazyInitializer lazyInitializer = ( (HibernateProxy) value ).getHibernateLazyInitializer();
+			if ( lazyInitializer.isUninitialized() ) {
+				return false;
+			}
+			entity = lazyInitializer.getImplementation();
+		}
+		if ( !visited.add( entity ) ) {
+			return true;
+		}
+		ClassMetadata metadata = sessionFactory.getClassMetadata( entity.getClass() );
+		if ( metadata == null ) {
+			return false;
+		}
+		Object[] values = metadata.getPropertyValues( entity );
+		Type[] types = metadata.getPropertyTypes();
+		for ( int i = 0; i < types.length; i++ ) {
+			if ( !isValueInitialized( values[i], types[i], visited ) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isValueInitialized(Object value, Type type, Set<Object> visited) {
+		if ( value == null ) {
+			return true;
+		}
+		if ( type.isEntityType() ) {
+			return isEntityInitialized( value, visited );
+		}
+		if ( type.isCollectionType() ) {
+			return isCollectionInitialized( value, (CollectionType) type, visited );
+		}
+		if ( type.isComponentType() ) {
+			return !hasAssociations( (CompositeType) type );
+		}
+		return true;
+	}
+
+	private boolean isCollectionInitialized(Object value, CollectionType type, Set<Object> visited) {
+		if ( value instanceof PersistentCollection && !( (PersistentCollection) value ).wasInitialized() ) {
+			return false;
+		}
+		if ( !visited.add( value ) ) {
+			return true;
+		}
+		CollectionPersister persister = sessionFactory.getCollectionPersister( type.getRole() );
+		Type elementType = persister.getElementType();
+		Collection<?> elements;
+		if ( value instanceof Map ) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			if ( persister.hasIndex() ) {
+				for ( Object key : map.keySet() ) {
+					if ( !isValueInitialized( key, persister.getIndexType(), visited ) ) {
+						return false;
+					}
+				}
+			}
+			elements = map.values();
+		}
+		else if ( value instanceof Collection ) {
+			elements = (Collection<?>) value;
+		}
+		else if ( value instanceof Object[] ) {
+			elements = Arrays.asList( (Object[]) value );
+		}
+		else {
+			return false;
+		}
+		for ( Object element : elements ) {
+			if ( !isValueInitialized( element, elementType, visited ) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean hasAssociations(CompositeType type) {
+		for ( Type subtype : type.getSubtypes() ) {
+			if ( subtype.isAssociationType()
+					|| subtype.isComponentType() && hasAssociations( (CompositeType) subtype ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
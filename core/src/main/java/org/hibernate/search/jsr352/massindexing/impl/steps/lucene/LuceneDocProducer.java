@@ -7,6 +7,8 @@
 package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 
 import java.io.Serializable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.batch.api.BatchProperty;
 import javax.batch.api.chunk.ItemProcessor;
@@ -14,7 +16,6 @@ import javax.batch.runtime.context.JobContext;
 import javax.batch.runtime.context.StepContext;
 import javax.inject.Inject;
 import javax.naming.NamingException;
-import javax.persistence.EntityManagerFactory;
 
 import org.hibernate.Session;
 import org.hibernate.engine.spi.SessionImplementor;
@@ -28,12 +29,31 @@ import org.hibernate.search.engine.spi.DocumentBuilderIndexedEntity;
 import org.hibernate.search.engine.spi.EntityIndexBinding;
 import org.hibernate.search.hcore.util.impl.ContextHelper;
 import org.hibernate.search.jsr352.massindexing.impl.JobContextData;
+import org.hibernate.search.jsr352.massindexing.impl.util.ReferenceEntityCache;
 import org.hibernate.search.spi.InstanceInitializer;
 import org.jboss.logging.Logger;
 
 /**
  * ItemProcessor receives entities coming from item reader and process then into an AddLuceneWorks. Only one entity is
  * received and processed at each time.
+ * <p>
+ * If the partition has a pool of document builder threads, the entity is handed to this pool and the processor returns
+ * a {@link java.util.concurrent.Future} of the AddLuceneWork, resolved later by the item writer. This way, the CPU-heavy
+ * document building does not serialize behind the database reads.
+ * <p>
+ * The entities are attached to the partition session, which is not thread-safe. The item reader therefore initializes
+ * the embedded associations of each page of entities before handing them out. A document builder thread builds the
+ * document of an entity without the session lock only if the whole graph reachable from the entity is initialized,
+ * see {@link InitializedGraphChecker}, since the getters and the field or class bridges may then read any part of this
+ * graph without using the session. Otherwise, the document is built while holding the lock of the session, which the
+ * item reader also takes when it loads entities in this session. The check itself is done under the lock, so that
+ * the initializations done by the other threads are visible.
+ * <p>
+ * The conversion context, the instance initializer and the identifier bridge are set up once per partition and reused
+ * for every entity. The conversion context is stateful, so each document builder thread has its own one.
+ * <p>
+ * If the job has a reference entity cache, the uninitialized proxies of the cached entities are resolved from this
+ * cache rather than from the database.
  *
  * @author Mincong Huang
  */
@@ -51,14 +71,19 @@ public class LuceneDocProducer implements ItemProcessor {
 	@BatchProperty
 	private String entityName;
 
-	private EntityManagerFactory emf;
-
 	private Session session;
+	private PartitionContextData partitionData;
 	private ExtendedSearchIntegrator searchIntegrator;
 	private EntityIndexBinding entityIndexBinding;
 	private DocumentBuilderIndexedEntity docBuilder;
 	private boolean isSetup = false;
 	private Class<?> entityType;
+	private ExecutorService documentBuilderPool;
+	private TwoWayFieldBridge idBridge;
+	private InstanceInitializer sessionInitializer;
+	private InitializedGraphChecker graphChecker;
+	private ConversionContext conversionContext;
+	private ThreadLocal<ConversionContext> conversionContexts;
 
 	@Override
 	public Object processItem(Object item) throws Exception {
@@ -67,7 +92,14 @@ public class LuceneDocProducer implements ItemProcessor {
 			setup();
 			isSetup = true;
 		}
-		AddLuceneWork addWork = buildAddLuceneWork( item, entityType );
+		EntityItem entityItem = (EntityItem) item;
+		if ( documentBuilderPool != null ) {
+			Future<AddLuceneWork> addWork = documentBuilderPool.submit(
+					() -> buildAddLuceneWorkConcurrently( entityItem.getEntity(), entityItem.getId() ) );
+			partitionData.documentSubmitted( addWork );
+			return addWork;
+		}
+		AddLuceneWork addWork = buildAddLuceneWork( entityItem.getEntity(), entityItem.getId(), conversionContext );
 		return addWork;
 	}
 
@@ -79,39 +111,63 @@ public class LuceneDocProducer implements ItemProcessor {
 	 */
 	private void setup() throws ClassNotFoundException, NamingException {
 
-		entityType = ( (JobContextData) jobContext.getTransientUserData() )
-				.getIndexedType( entityName );
-		PartitionContextData partitionData = (PartitionContextData) stepContext.getTransientUserData();
+		JobContextData jobData = (JobContextData) jobContext.getTransientUserData();
+		entityType = jobData.getIndexedType( entityName );
+		partitionData = (PartitionContextData) stepContext.getTransientUserData();
 		session = partitionData.getSession();
+		documentBuilderPool = partitionData.getDocumentBuilderPool();
 		searchIntegrator = ContextHelper.getSearchIntegrator( session );
 		entityIndexBinding = searchIntegrator.getIndexBindings().get( entityType );
 		docBuilder = entityIndexBinding.getDocumentBuilder();
+		idBridge = docBuilder.getIdBridge();
 
-		JobContextData jobData = (JobContextData) jobContext.getTransientUserData();
-		emf = jobData.getEntityManagerFactory();
+		sessionInitializer = new HibernateSessionLoadingInitializer( (SessionImplementor) session );
+		if ( documentBuilderPool == null ) {
+			conversionContext = new ContextualExceptionBridgeHelper();
+		}
+		else {
+			conversionContexts = ThreadLocal.withInitial( ContextualExceptionBridgeHelper::new );
+			graphChecker = new InitializedGraphChecker( ( (SessionImplementor) session ).getFactory() );
+		}
+		ReferenceEntityCache referenceEntityCache = jobData.getReferenceEntityCache();
+		if ( !referenceEntityCache.isEmpty() ) {
+			sessionInitializer = new ReferenceCacheInitializer( sessionInitializer, referenceEntityCache );
+		}
+	}
+
+	/**
+	 * Build addLuceneWork using input entity, from a document builder thread. The partition session is shared with the
+	 * other threads, so the document is built while holding its lock, unless building it cannot use the session.
+	 *
+	 * @param entity selected entity, attached to the partition session
+	 * @param id the identifier of the selected entity, extracted by the item reader
+	 * @return an addLuceneWork
+	 */
+	private AddLuceneWork buildAddLuceneWorkConcurrently(Object entity, Serializable id) {
+		ConversionContext threadConversionContext = conversionContexts.get();
+		synchronized ( session ) {
+			if ( !graphChecker.isInitialized( entity ) ) {
+				return buildAddLuceneWork( entity, id, threadConversionContext );
+			}
+		}
+		return buildAddLuceneWork( entity, id, threadConversionContext );
 	}
 
 	/**
 	 * Build addLuceneWork using input entity. This method is inspired by the current mass indexer implementation.
 	 *
 	 * @param entity selected entity, obtained from JPA entity manager. It is used to build Lucene work.
-	 * @param entityType the class type of selected entity
+	 * @param id the identifier of the selected entity, extracted by the item reader
+	 * @param conversionContext the conversion context of the current thread
 	 * @return an addLuceneWork
 	 */
-	private AddLuceneWork buildAddLuceneWork(Object entity, Class<?> entityType) {
+	private AddLuceneWork buildAddLuceneWork(Object entity, Serializable id, ConversionContext conversionContext) {
 		// TODO: tenant ID should not be null
 		// Or may it be fine to be null? Gunnar's integration test in Hibernate
 		// Search: MassIndexingTimeoutIT does not mention the tenant ID neither
 		// (The tenant ID is not included mass indexer setup in the
 		// ConcertManager)
 		String tenantId = null;
-		ConversionContext conversionContext = new ContextualExceptionBridgeHelper();
-		final InstanceInitializer sessionInitializer = new HibernateSessionLoadingInitializer(
-				(SessionImplementor) session );
-
-		Serializable id = (Serializable) emf.getPersistenceUnitUtil()
-				.getIdentifier( entity );
-		TwoWayFieldBridge idBridge = docBuilder.getIdBridge();
 		conversionContext.pushIdentifierProperty();
 		String idInString = null;
 		try {
@@ -6,8 +6,24 @@
  */
 package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.batch.api.BatchProperty;
 import javax.batch.api.chunk.AbstractItemWriter;
@@ -17,29 +33,70 @@ import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.hibernate.search.backend.AddLuceneWork;
 import org.hibernate.search.backend.FlushLuceneWork;
-import org.hibernate.search.backend.impl.StreamingOperationExecutor;
-import org.hibernate.search.backend.impl.StreamingOperationExecutorSelector;
+import org.hibernate.search.backend.LuceneWork;
+import org.hibernate.search.backend.UpdateLuceneWork;
 import org.hibernate.search.engine.spi.EntityIndexBinding;
+import org.hibernate.search.exception.SearchException;
+import org.hibernate.search.indexes.spi.DirectoryBasedIndexManager;
 import org.hibernate.search.indexes.spi.IndexManager;
 import org.hibernate.search.jpa.Search;
 import org.hibernate.search.jsr352.massindexing.impl.JobContextData;
+import org.hibernate.search.jsr352.massindexing.impl.util.BulkLoadDirectories;
 import org.hibernate.search.spi.SearchIntegrator;
 import org.hibernate.search.store.IndexShardingStrategy;
 import org.jboss.logging.Logger;
 
 /**
  * Batch item writer writes a list of items into Lucene documents. Here, items mean the luceneWorks, given by the
- * processor. These items will be executed using StreamingOperationExecutor.
+ * processor. When the documents are built by a pool of threads, the items are futures of luceneWorks, which are
+ * awaited in order.
+ * <p>
+ * The luceneWorks of a chunk are grouped by the index manager (shard) chosen by the sharding strategy, and each group
+ * is submitted to its index manager in one batch. The index managers touched by the chunk are then flushed explicitly
+ * and synchronously, so only these are committed. An asynchronous backend only queues the works, so before flushing an
+ * index manager, the writer waits until the works submitted to it are applied, as reported by an
+ * {@link AppliedWorkMonitor}: the chunk is then durable once the flush returns, whatever the backend.
+ * When the entity type is sharded, the groups of the different shards are applied concurrently by one writer thread
+ * per shard. The number of flushes of each index is recorded in the partition progress.
+ * <p>
+ * The flush can also be deferred to every N chunks, to an elapsed time, or to the end of the partition. The index
+ * managers touched since the last flush are then flushed once the flush policy requires it, and at the end of the last
+ * chunk of the partition. The writer then tells the reader, through the partition context data, which chunks are
+ * durable, so that the reader only checkpoints durable progress. Since the works submitted but not checkpointed may
+ * still be committed by another partition writing to the same index, a restarted job updates the documents instead of
+ * adding them.
+ * <p>
+ * With write-behind, the chunks are not written by the partition thread: they are queued in a bounded queue, drained by
+ * a dedicated writer thread, so that the partition thread reads and builds the next chunks while the previous ones are
+ * written. A chunk is acknowledged once it is durable in the index, and the reader only checkpoints acknowledged
+ * chunks.
+ * <p>
+ * When the chunks are sized by byte volume, the size of the documents written is estimated and recorded in the
+ * partition context data for the checkpoint algorithm.
+ * <p>
+ * In bulk-load mode, the documents are not sent to the index managers at all: each partition adds them to its own
+ * Lucene index writers, one per target index, writing to private directories. Whatever the flush policy, these
+ * private writers are only committed at the end of the last chunk of the partition, and an interrupted partition
+ * writes its private indexes again from scratch. The private indexes are merged into the target indexes by the
+ * {@code afterChunk} step.
  *
  * @author Mincong Huang
  */
-@SuppressWarnings("deprecation")
 public class LuceneDocWriter extends AbstractItemWriter {
 
 	private static final Logger LOGGER = Logger.getLogger( LuceneDocWriter.class );
-	private static final boolean FORCE_ASYNC = true;
+	private static final double BULK_LOAD_RAM_BUFFER_SIZE_MB = 64;
+	private static final PendingChunk END_OF_PARTITION = new PendingChunk( -1, null );
+	private static final long APPLIED_WORK_TIMEOUT_MS = 60_000L;
 
 	@Inject
 	private JobContext jobContext;
@@ -47,29 +104,137 @@ public class LuceneDocWriter extends AbstractItemWriter {
 	@Inject
 	private StepContext stepContext;
 
+	@Inject
+	@BatchProperty
+	private String bulkLoad;
+
+	@Inject
+	@BatchProperty
+	private String chunkBytes;
+
+	@Inject
+	@BatchProperty
+	private String chunksPerFlush;
+
 	@Inject
 	@BatchProperty
 	private String entityName;
 
+	@Inject
+	@BatchProperty
+	private String flushIntervalMillis;
+
+	@Inject
+	@BatchProperty
+	private String partitionId;
+
+	@Inject
+	@BatchProperty
+	private String writeBehindChunks;
+
 	private EntityManagerFactory emf;
 
 	private EntityManager em;
 	private EntityIndexBinding entityIndexBinding;
+	@SuppressWarnings("deprecation")
+	private IndexShardingStrategy shardingStrategy;
+	private SearchIntegrator searchIntegrator;
+	private Analyzer analyzer;
+	private Map<IndexManager, IndexWriter> privateIndexWriters = new HashMap<>();
+	private Map<IndexManager, WorkAnalyzer> privateAnalyzers = new HashMap<>();
+	private Map<IndexManager, AppliedWorkMonitor> workMonitors = new HashMap<>();
+	private ExecutorService shardWriterPool;
+	private PartitionContextData partitionData;
+	private long lastChunkApplied;
+	private BlockingQueue<PendingChunk> writeBehindQueue;
+	private Thread writeBehindThread;
+	private volatile Exception writeBehindFailure;
+	private boolean measureDocumentBytes;
+	private boolean updateExisting;
+
+	private int chunksPerFlushValue;
+	private long flushIntervalMillisValue;
+	private Set<IndexManager> unflushedIndexManagers = new LinkedHashSet<>();
+	private int chunksSinceFlush;
+	private long lastFlush;
 
 	/**
 	 * The close method marks the end of use of the ItemWriter. This method is called when the job stops for any reason.
 	 * In case of job interruption, the job might need to be restarted. That's why the step context data is persisted.
+	 * <p>
+	 * If the write-behind thread failed, or if the works not flushed yet cannot be flushed, the exception is rethrown
+	 * once the resources are released, so that the step fails and the partition is indexed again on restart.
 	 *
 	 * @throws Exception is thrown for any errors.
 	 */
 	@Override
 	public void close() throws Exception {
 		LOGGER.debug( "close() called." );
+		Exception failure = null;
+		if ( writeBehindThread != null ) {
+			try {
+				// the write-behind thread flushes the remaining works before it ends
+				while ( writeBehindFailure == null
+						&& !writeBehindQueue.offer( END_OF_PARTITION, 100, TimeUnit.MILLISECONDS ) ) {
+					// wait for a free slot
+				}
+				writeBehindThread.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = e;
+			}
+			writeBehindThread = null;
+			if ( writeBehindFailure != null ) {
+				failure = writeBehindFailure;
+			}
+		}
 		try {
-			em.close();
+			// the works of an interrupted partition are not flushed: they are written again on restart
+			if ( failure == null && !unflushedIndexManagers.isEmpty() && partitionData.isAllItemsRead() ) {
+				flush();
+			}
+			if ( failure == null && partitionData.isCompleted() ) {
+				partitionData.getPartitionProgress().setCompleted( true );
+			}
 		}
 		catch (Exception e) {
 			LOGGER.error( e );
+			failure = e;
+		}
+		final boolean completed = failure == null && partitionData.isCompleted();
+		for ( IndexWriter indexWriter : privateIndexWriters.values() ) {
+			try {
+				if ( completed ) {
+					indexWriter.close();
+				}
+				else {
+					// the private indexes of an interrupted partition are written again on restart
+					indexWriter.rollback();
+				}
+				indexWriter.getDirectory().close();
+			}
+			catch (Exception e) {
+				LOGGER.error( e );
+			}
+		}
+		privateIndexWriters.clear();
+		privateAnalyzers.clear();
+		workMonitors.clear();
+		if ( shardWriterPool != null ) {
+			shardWriterPool.shutdownNow();
+			shardWriterPool = null;
+		}
+		try {
+			if ( em != null ) {
+				em.close();
+			}
+		}
+		catch (Exception e) {
+			LOGGER.error( e );
+		}
+		if ( failure != null ) {
+			throw failure;
 		}
 	}
 
@@ -84,16 +249,63 @@ public class LuceneDocWriter extends AbstractItemWriter {
 		LOGGER.debug( "open(Seriliazable) called" );
 
 		JobContextData jobData = (JobContextData) jobContext.getTransientUserData();
+		partitionData = (PartitionContextData) stepContext.getTransientUserData();
+		if ( partitionData.getPartitionProgress().isCompleted() ) {
+			// skipped by the reader, no item to write
+			return;
+		}
 
 		emf = jobData.getEntityManagerFactory();
 		em = emf.createEntityManager();
 
 		Class<?> entityType = jobData.getIndexedType( entityName );
-		entityIndexBinding = Search
+		searchIntegrator = Search
 				.getFullTextEntityManager( em )
 				.getSearchFactory()
-				.unwrap( SearchIntegrator.class )
-				.getIndexBinding( entityType );
+				.unwrap( SearchIntegrator.class );
+		entityIndexBinding = searchIntegrator.getIndexBinding( entityType );
+		shardingStrategy = getSelectionStrategy( entityIndexBinding );
+		if ( Boolean.parseBoolean( bulkLoad ) ) {
+			checkDirectoryBased( entityIndexBinding.getIndexManagers() );
+			analyzer = getAnalyzer( searchIntegrator, entityType );
+		}
+		final int shards = entityIndexBinding.getIndexManagers().length;
+		if ( shards > 1 ) {
+			final AtomicInteger threadCount = new AtomicInteger();
+			shardWriterPool = Executors.newFixedThreadPool( shards, r -> {
+				String name = "BatchIndexingJob-" + entityName + "-" + partitionId
+						+ "-shardWriter-" + threadCount.incrementAndGet();
+				Thread thread = new Thread( r, name );
+				thread.setDaemon( true );
+				return thread;
+			} );
+		}
+
+		if ( Boolean.parseBoolean( bulkLoad ) ) {
+			// the private indexes are committed once, at the end of the partition
+			chunksPerFlushValue = 0;
+			flushIntervalMillisValue = 0L;
+		}
+		else {
+			chunksPerFlushValue = chunksPerFlush == null || chunksPerFlush.isEmpty()
+					? 1 : Integer.parseInt( chunksPerFlush );
+			flushIntervalMillisValue = flushIntervalMillis == null || flushIntervalMillis.isEmpty()
+					? 0L : Long.parseLong( flushIntervalMillis );
+		}
+		lastFlush = System.currentTimeMillis();
+		// works submitted but not checkpointed by a previous execution may have been flushed by another partition
+		updateExisting = jobData.isRestarted() && !Boolean.parseBoolean( bulkLoad ) && !isFlushedEveryChunk();
+
+		measureDocumentBytes = chunkBytes != null && !chunkBytes.isEmpty() && Long.parseLong( chunkBytes ) > 0;
+		final int writeBehindChunksValue = writeBehindChunks == null || writeBehindChunks.isEmpty()
+				? 0 : Integer.parseInt( writeBehindChunks );
+		if ( writeBehindChunksValue > 0 ) {
+			writeBehindQueue = new ArrayBlockingQueue<>( writeBehindChunksValue );
+			writeBehindThread = new Thread( this::drainWriteBehindQueue,
+					"BatchIndexingJob-" + entityName + "-" + partitionId + "-writeBehind" );
+			writeBehindThread.setDaemon( true );
+			writeBehindThread.start();
+		}
 	}
 
 	/**
@@ -104,27 +316,319 @@ public class LuceneDocWriter extends AbstractItemWriter {
 	 */
 	@Override
 	public void writeItems(List<Object> items) throws Exception {
-		IndexShardingStrategy shardingStrategy = entityIndexBinding.getSelectionStrategy();
-
-		for ( Object item : items ) {
-			AddLuceneWork addWork = (AddLuceneWork) item;
-			StreamingOperationExecutor executor = addWork.acceptIndexWorkVisitor(
-					StreamingOperationExecutorSelector.INSTANCE, null );
-			executor.performStreamOperation(
-					addWork,
-					shardingStrategy,
-					null, // monitor,
-					FORCE_ASYNC );
-		}
-
-		// flush after write operation
-		IndexManager[] indexManagers = entityIndexBinding.getIndexManagers();
-		for ( IndexManager im : indexManagers ) {
-			im.performStreamOperation( FlushLuceneWork.INSTANCE, null, false );
+		final long chunk = partitionData.chunkWritten();
+		if ( writeBehindQueue != null ) {
+			// the documents are built before the chunk ends, because the reader may then clear the session
+			List<Object> works = new ArrayList<>( items.size() );
+			for ( Object item : items ) {
+				works.add( toAddLuceneWork( item ) );
+			}
+			PendingChunk pendingChunk = new PendingChunk( chunk, works );
+			// wait for a free slot, unless the write-behind thread failed
+			while ( !writeBehindQueue.offer( pendingChunk, 100, TimeUnit.MILLISECONDS ) ) {
+				checkWriteBehindFailure();
+			}
+			checkWriteBehindFailure();
+		}
+		else {
+			writeChunk( chunk, items );
 		}
 
 		// update work count
-		PartitionContextData partitionData = (PartitionContextData) stepContext.getTransientUserData();
 		partitionData.documentAdded( items.size() );
 	}
+
+	/**
+	 * Write the given chunk into the index, and flush the index if the flush policy requires it. Once all the works
+	 * written so far are durable, the chunk is acknowledged to the reader through the partition context data.
+	 */
+	private void writeChunk(long chunk, List<Object> items) throws Exception {
+		Map<IndexManager, List<LuceneWork>> worksPerIndexManager = groupByIndexManager( items );
+		if ( measureDocumentBytes ) {
+			long bytes = 0;
+			for ( List<LuceneWork> works : worksPerIndexManager.values() ) {
+				for ( LuceneWork work : works ) {
+					bytes += estimateBytes( work.getDocument() );
+				}
+			}
+			partitionData.documentBytesWritten( bytes, items.size() );
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for ( Map.Entry<IndexManager, List<LuceneWork>> entry : worksPerIndexManager.entrySet() ) {
+			IndexManager im = entry.getKey();
+			List<LuceneWork> works = entry.getValue();
+			if ( Boolean.parseBoolean( bulkLoad ) ) {
+				IndexWriter indexWriter = getPrivateIndexWriter( im );
+				WorkAnalyzer workAnalyzer = privateAnalyzers.get( im );
+				tasks.add( () -> {
+					for ( LuceneWork work : works ) {
+						// the fields may be mapped to other analyzers by an analyzer discriminator
+						workAnalyzer.setFieldToAnalyzerMap( work.getFieldToAnalyzerMap() );
+						indexWriter.addDocument( work.getDocument() );
+					}
+					return null;
+				} );
+				unflushedIndexManagers.add( im );
+			}
+			else {
+				AppliedWorkMonitor workMonitor = workMonitors.computeIfAbsent( im,
+						key -> new AppliedWorkMonitor( APPLIED_WORK_TIMEOUT_MS ) );
+				workMonitor.worksSubmitted( works.size() );
+				tasks.add( () -> {
+					im.performOperations( works, workMonitor );
+					return null;
+				} );
+				unflushedIndexManagers.add( im );
+			}
+		}
+		applyPerShard( tasks );
+		lastChunkApplied = chunk;
+
+		if ( !unflushedIndexManagers.isEmpty() ) {
+			chunksSinceFlush++;
+			// the last chunk is flushed here, so that a failed flush fails the chunk
+			if ( isFlushDue() || partitionData.isAllItemsRead() ) {
+				flush();
+			}
+		}
+		else {
+			partitionData.chunksDurable( chunk );
+		}
+	}
+
+	/**
+	 * Write the chunks queued by the partition thread, until the end of the partition.
+	 */
+	private void drainWriteBehindQueue() {
+		try {
+			PendingChunk pendingChunk = writeBehindQueue.take();
+			while ( pendingChunk != END_OF_PARTITION ) {
+				writeChunk( pendingChunk.chunk, pendingChunk.items );
+				pendingChunk = writeBehindQueue.take();
+			}
+			if ( !unflushedIndexManagers.isEmpty() ) {
+				flush();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			writeBehindFailure = e;
+		}
+		catch (Exception e) {
+			LOGGER.error( e );
+			writeBehindFailure = e;
+		}
+	}
+
+	private void checkWriteBehindFailure() throws Exception {
+		if ( writeBehindFailure != null ) {
+			throw writeBehindFailure;
+		}
+	}
+
+	private boolean isFlushedEveryChunk() {
+		return chunksPerFlushValue == 1 && flushIntervalMillisValue <= 0;
+	}
+
+	private boolean isFlushDue() {
+		return ( chunksPerFlushValue > 0 && chunksSinceFlush >= chunksPerFlushValue )
+				|| ( flushIntervalMillisValue > 0
+						&& System.currentTimeMillis() - lastFlush >= flushIntervalMillisValue );
+	}
+
+	/**
+	 * Flush the index managers touched since the last flush, which makes the works submitted to them durable. The works
+	 * queued by an asynchronous backend are awaited first, so that the flush commits them. In bulk-load mode, the
+	 * private index writers of these index managers are committed instead.
+	 */
+	private void flush() throws Exception {
+		PartitionProgress progress = partitionData.getPartitionProgress();
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for ( IndexManager im : unflushedIndexManagers ) {
+			progress.indexFlushed( im.getIndexName() );
+			IndexWriter indexWriter = privateIndexWriters.get( im );
+			AppliedWorkMonitor workMonitor = workMonitors.get( im );
+			tasks.add( () -> {
+				if ( indexWriter != null ) {
+					indexWriter.commit();
+				}
+				else {
+					workMonitor.awaitWorksApplied();
+					im.performStreamOperation( FlushLuceneWork.INSTANCE, null, false );
+				}
+				return null;
+			} );
+		}
+		applyPerShard( tasks );
+		LOGGER.debugf( "%d index managers flushed after %d chunks", unflushedIndexManagers.size(), chunksSinceFlush );
+		unflushedIndexManagers.clear();
+		chunksSinceFlush = 0;
+		lastFlush = System.currentTimeMillis();
+		partitionData.chunksDurable( lastChunkApplied );
+	}
+
+	/**
+	 * Apply the given tasks, one per shard. They are applied concurrently by the shard writer threads if there are
+	 * several of them, and the calling thread waits for all of them.
+	 */
+	private void applyPerShard(List<Callable<Void>> tasks) throws Exception {
+		if ( shardWriterPool == null || tasks.size() <= 1 ) {
+			for ( Callable<Void> task : tasks ) {
+				task.call();
+			}
+			return;
+		}
+		for ( Future<Void> future : shardWriterPool.invokeAll( tasks ) ) {
+			try {
+				future.get();
+			}
+			catch (ExecutionException e) {
+				if ( e.getCause() instanceof Exception ) {
+					throw (Exception) e.getCause();
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Get the sharding strategy choosing the index manager of each document of the given entity type.
+	 */
+	@SuppressWarnings("deprecation")
+	private static IndexShardingStrategy getSelectionStrategy(EntityIndexBinding entityIndexBinding) {
+		return entityIndexBinding.getSelectionStrategy();
+	}
+
+	/**
+	 * Get the analyzer of the given entity type, which analyzes each field of the documents added to the private
+	 * indexes like the index managers do.
+	 */
+	@SuppressWarnings("deprecation")
+	private static Analyzer getAnalyzer(SearchIntegrator searchIntegrator, Class<?> entityType) {
+		return searchIntegrator.getAnalyzer( entityType );
+	}
+
+	/**
+	 * Get the analyzer of the given name, chosen by an analyzer discriminator for some fields of a document.
+	 */
+	@SuppressWarnings("deprecation")
+	private static Analyzer getAnalyzer(SearchIntegrator searchIntegrator, String analyzerName) {
+		return searchIntegrator.getAnalyzer( analyzerName );
+	}
+
+	/**
+	 * Check that the given index managers are directory based, before any document is written, since the private
+	 * indexes of the bulk-load mode can only be merged into a Lucene directory.
+	 */
+	private static void checkDirectoryBased(IndexManager[] indexManagers) {
+		for ( IndexManager im : indexManagers ) {
+			if ( !( im instanceof DirectoryBasedIndexManager ) ) {
+				throw new SearchException( "Bulk load requires a directory based index manager, but index "
+						+ im.getIndexName() + " uses " + im.getClass().getName() );
+			}
+		}
+	}
+
+	/**
+	 * Get the private index writer of this partition for the given index manager, opening it on first use. An existing
+	 * private index is overwritten, since a partition only commits it once all its documents are written: if the
+	 * partition is run again, its previous execution did not complete.
+	 * <p>
+	 * The documents are analyzed by a {@link WorkAnalyzer} of the index manager, which applies the analyzers chosen by
+	 * the analyzer discriminators of each work.
+	 */
+	private IndexWriter getPrivateIndexWriter(IndexManager indexManager) throws IOException {
+		IndexWriter indexWriter = privateIndexWriters.get( indexManager );
+		if ( indexWriter == null ) {
+			FSDirectory directory = FSDirectory.open( BulkLoadDirectories.getPartitionDirectory(
+					jobContext.getInstanceId(), indexManager.getIndexName(), Integer.parseInt( partitionId ) ) );
+			WorkAnalyzer workAnalyzer = new WorkAnalyzer( analyzer,
+					analyzerName -> getAnalyzer( searchIntegrator, analyzerName ) );
+			IndexWriterConfig config = new IndexWriterConfig( workAnalyzer )
+					.setOpenMode( IndexWriterConfig.OpenMode.CREATE )
+					.setRAMBufferSizeMB( BULK_LOAD_RAM_BUFFER_SIZE_MB );
+			indexWriter = new IndexWriter( directory, config );
+			privateIndexWriters.put( indexManager, indexWriter );
+			privateAnalyzers.put( indexManager, workAnalyzer );
+		}
+		return indexWriter;
+	}
+
+	/**
+	 * Group the luceneWorks of the given items by the index manager in which they have to be added, keeping their
+	 * order.
+	 */
+	private Map<IndexManager, List<LuceneWork>> groupByIndexManager(List<Object> items) throws Exception {
+		Map<IndexManager, List<LuceneWork>> worksPerIndexManager = new LinkedHashMap<>();
+		for ( Object item : items ) {
+			AddLuceneWork addWork = toAddLuceneWork( item );
+			IndexManager indexManager = shardingStrategy.getIndexManagerForAddition(
+					addWork.getEntityClass(),
+					addWork.getId(),
+					addWork.getIdInString(),
+					addWork.getDocument() );
+			LuceneWork work = addWork;
+			if ( updateExisting ) {
+				work = new UpdateLuceneWork( addWork.getTenantId(), addWork.getId(), addWork.getIdInString(),
+						addWork.getEntityClass(), addWork.getDocument(), addWork.getFieldToAnalyzerMap() );
+			}
+			worksPerIndexManager.computeIfAbsent( indexManager, im -> new ArrayList<>() )
+					.add( work );
+		}
+		return worksPerIndexManager;
+	}
+
+	/**
+	 * Estimate the size of a document, using the length of its stored and indexed values. Values given as readers are
+	 * not counted.
+	 */
+	private static long estimateBytes(Document document) {
+		long bytes = 0;
+		for ( IndexableField field : document.getFields() ) {
+			BytesRef binaryValue = field.binaryValue();
+			if ( binaryValue != null ) {
+				bytes += binaryValue.length;
+			}
+			else if ( field.stringValue() != null ) {
+				bytes += field.stringValue().length();
+			}
+			else if ( field.numericValue() != null ) {
+				bytes += Long.BYTES;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Get the luceneWork of the given item, waiting for its building if it was delegated to a document builder thread.
+	 */
+	private AddLuceneWork toAddLuceneWork(Object item) throws Exception {
+		if ( item instanceof Future ) {
+			try {
+				return (AddLuceneWork) ( (Future<?>) item ).get();
+			}
+			catch (ExecutionException e) {
+				if ( e.getCause() instanceof Exception ) {
+					throw (Exception) e.getCause();
+				}
+				throw e;
+			}
+		}
+		return (AddLuceneWork) item;
+	}
+
+	/**
+	 * A chunk waiting to be written by the write-behind thread.
+	 */
+	private static class PendingChunk {
+
+		private final long chunk;
+		private final List<Object> items;
+
+		private PendingChunk(long chunk, List<Object> items) {
+			this.chunk = chunk;
+			this.items = items;
+		}
+	}
 }
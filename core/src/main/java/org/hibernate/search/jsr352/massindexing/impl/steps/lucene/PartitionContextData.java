@@ -7,13 +7,19 @@
 package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.hibernate.Session;
 
 /**
  * Data model for each partition of step {@code produceLuceneDoc}. It contains a partition-level indexing progress and
- * the session attached to this partition. Notice that the batch runtime maintains one clone per partition and each
- * partition is running on a single thread. Therefore, session is not shared with other threads / partitions.
+ * the session attached to this partition. Notice that the batch runtime maintains one clone per partition, so the
+ * session is never shared with other partitions. Inside the partition, it is shared with the document builder
+ * threads if there are some: every use of the session is then done while holding its lock.
  * 
  * @author Gunnar Morling
  * @author Mincong Huang
@@ -26,11 +32,57 @@ public class PartitionContextData implements Serializable {
 
 	/**
 	 * Hibernate session, unwrapped from EntityManager. It is stored for sharing the session between item reader and
-	 * item processor. Notice that item reader and item processor of the same partition always run in the same thread,
-	 * so it should be OK. When the job stops, session object will be released before persisting this class's instance.
+	 * item processor. The item reader and the item processor of the same partition run in the same thread, but the
+	 * documents may be built by the document builder threads: these threads and the item reader then synchronize on
+	 * the session to load entities through it. When the job stops, session object will be released before persisting this class's instance.
 	 */
 	private Session session;
 
+	/**
+	 * Pool of threads building the Lucene documents of this partition, or null if the documents are built by the
+	 * partition thread. Like the session, it is released when the job stops.
+	 */
+	private transient ExecutorService documentBuilderPool;
+
+	/**
+	 * The documents submitted to the document builder threads since the session was last cleared. Only used by the
+	 * partition thread.
+	 */
+	private transient List<Future<?>> pendingDocuments;
+
+	/**
+	 * The number of lazy loads avoided by initializing the embedded associations of whole pages of entities.
+	 */
+	private long lazyLoadsAvoided;
+
+	/**
+	 * The number of chunks written by the item writer since the partition was opened.
+	 */
+	private transient long chunksWritten;
+
+	/**
+	 * The number of chunks durable in the index since the partition was opened. Set by the item writer, possibly from
+	 * its write-behind thread, and read by the item reader when it checkpoints.
+	 */
+	private transient volatile long chunksDurable;
+
+	/**
+	 * The moving average of the size of the documents written by this partition, in bytes, or 0 if not measured. Set
+	 * by the item writer, possibly from its write-behind thread, and read by the checkpoint algorithm.
+	 */
+	private transient volatile long averageDocumentBytes;
+
+	/**
+	 * Whether the item reader read all the entities of the partition. Set by the item reader, and read by the item
+	 * writer, possibly from its write-behind thread.
+	 */
+	private transient volatile boolean allItemsRead;
+
+	/**
+	 * The last checkpoint of the item reader for which all the works were durable in the index.
+	 */
+	private Serializable durableCheckpoint;
+
 	public PartitionContextData(int partitionId, String entityName) {
 		partitionProgress = new PartitionProgress( partitionId, entityName );
 	}
@@ -39,6 +91,121 @@ public class PartitionContextData implements Serializable {
 		partitionProgress.documentsAdded( increment );
 	}
 
+	/**
+	 * Record a document submitted to the document builder threads, whose entity must stay attached to the session
+	 * until the document is built.
+	 */
+	public void documentSubmitted(Future<?> document) {
+		if ( pendingDocuments == null ) {
+			pendingDocuments = new ArrayList<>();
+		}
+		pendingDocuments.add( document );
+	}
+
+	/**
+	 * Wait for the documents submitted to the document builder threads, so that their entities can be detached from
+	 * the session. The failures are not rethrown here: they are reported by the item writer.
+	 *
+	 * @throws InterruptedException if the partition thread is interrupted while waiting.
+	 */
+	public void awaitDocuments() throws InterruptedException {
+		if ( pendingDocuments == null ) {
+			return;
+		}
+		for ( Future<?> document : pendingDocuments ) {
+			try {
+				document.get();
+			}
+			catch (ExecutionException e) {
+				// reported by the item writer
+			}
+		}
+		pendingDocuments.clear();
+	}
+
+	public void lazyLoadsAvoided(long increment) {
+		lazyLoadsAvoided += increment;
+	}
+
+	public long getLazyLoadsAvoided() {
+		return lazyLoadsAvoided;
+	}
+
+	/**
+	 * Count a chunk written by the item writer.
+	 *
+	 * @return the sequence number of this chunk, starting at 1.
+	 */
+	public long chunkWritten() {
+		return ++chunksWritten;
+	}
+
+	public long getChunksWritten() {
+		return chunksWritten;
+	}
+
+	/**
+	 * Acknowledge that all the chunks up to the given one are durable in the index.
+	 *
+	 * @param chunk the sequence number of the last durable chunk
+	 */
+	public void chunksDurable(long chunk) {
+		chunksDurable = chunk;
+	}
+
+	public long getChunksDurable() {
+		return chunksDurable;
+	}
+
+	/**
+	 * Reset the chunk counters, when the partition is opened.
+	 */
+	public void resetChunks() {
+		chunksWritten = 0;
+		chunksDurable = 0;
+	}
+
+	/**
+	 * Record the size of the documents of a chunk written by the item writer.
+	 *
+	 * @param bytes the estimated size of the documents, in bytes
+	 * @param documents the number of documents
+	 */
+	public void documentBytesWritten(long bytes, int documents) {
+		if ( documents == 0 ) {
+			return;
+		}
+		long chunkAverage = Math.max( 1, bytes / documents );
+		averageDocumentBytes = averageDocumentBytes == 0 ? chunkAverage : ( averageDocumentBytes + chunkAverage ) / 2;
+	}
+
+	public long getAverageDocumentBytes() {
+		return averageDocumentBytes;
+	}
+
+	public boolean isAllItemsRead() {
+		return allItemsRead;
+	}
+
+	/**
+	 * @return true if all the entities of the partition are read, and all the chunks written are durable.
+	 */
+	public boolean isCompleted() {
+		return allItemsRead && chunksDurable == chunksWritten;
+	}
+
+	public void setAllItemsRead(boolean allItemsRead) {
+		this.allItemsRead = allItemsRead;
+	}
+
+	public Serializable getDurableCheckpoint() {
+		return durableCheckpoint;
+	}
+
+	public void setDurableCheckpoint(Serializable durableCheckpoint) {
+		this.durableCheckpoint = durableCheckpoint;
+	}
+
 	public PartitionProgress getPartitionProgress() {
 		return partitionProgress;
 	}
@@ -50,4 +217,12 @@ public class PartitionContextData implements Serializable {
 	public void setSession(Session session) {
 		this.session = session;
 	}
+
+	public ExecutorService getDocumentBuilderPool() {
+		return documentBuilderPool;
+	}
+
+	public void setDocumentBuilderPool(ExecutorService documentBuilderPool) {
+		this.documentBuilderPool = documentBuilderPool;
+	}
 }
@@ -7,33 +7,73 @@
 package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.batch.api.BatchProperty;
 import javax.batch.api.partition.PartitionPlan;
 import javax.batch.api.partition.PartitionPlanImpl;
 import javax.batch.runtime.context.JobContext;
+import javax.batch.runtime.context.StepContext;
 import javax.inject.Inject;
 import javax.persistence.EntityManagerFactory;
 
 import org.hibernate.Criteria;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
-import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.StatelessSession;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
+import org.hibernate.dialect.DB2Dialect;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.Oracle8iDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.dialect.SQLServer2005Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 import org.hibernate.search.jsr352.massindexing.impl.JobContextData;
+import org.hibernate.search.jsr352.massindexing.impl.util.IdRangeQueue;
 import org.hibernate.search.jsr352.massindexing.impl.util.PartitionBound;
+import org.hibernate.search.jsr352.massindexing.impl.util.PartitionedHql;
+import org.hibernate.type.LongType;
 import org.jboss.logging.Logger;
 
 /**
  * Lucene partition mapper provides a partition plan to the Lucene production step: "produceLuceneDoc". The partition
  * plan is defined dynamically, according to the number of partitions given by the user.
+ * <p>
+ * By default, each partition contains {@code rowsPerPartition} rows. When a number of partitions per thread is given,
+ * the number of rows per partition is derived instead from the total number of rows to index, computed by the
+ * {@link StepProgressSetupListener}, so that every thread receives roughly this number of partitions: large entity
+ * types are then split finely and small entity types are kept in few partitions.
+ * <p>
+ * Criteria restrict the selection of every root entity, each entity type being partitioned independently with the
+ * criteria of all the entity types and its own criteria. When no HQL or criteria restricts the selection of an entity
+ * type, the partition boundaries are computed by the database using window functions, on dialects supporting them.
+ * Other dialects fall back to scrolling the IDs of each entity type. For entity types having numeric and dense IDs,
+ * the ID range can also be split without reading any row.
+ * <p>
+ * When partitions steal their work, the partition units computed above become ID ranges shared in a queue by the
+ * partitions of the same entity type: a partition which finishes its range claims the next one, so a slow range no
+ * longer holds back the other threads. The ranges are stored in the step progress to be reused after a restart.
+ * <p>
+ * When several partition mapping threads are given, the entity types are partitioned concurrently, each one using its
+ * own stateless session.
  *
  * @author Mincong Huang
  */
@@ -48,6 +88,9 @@ public class PartitionMapper implements javax.batch.api.partition.PartitionMappe
 	@Inject
 	private JobContext jobContext;
 
+	@Inject
+	private StepContext stepContext;
+
 	@Inject
 	@BatchProperty
 	private String fetchSize;
@@ -60,12 +103,38 @@ public class PartitionMapper implements javax.batch.api.partition.PartitionMappe
 	@BatchProperty
 	private String maxThreads;
 
+	@Inject
+	@BatchProperty
+	private String partitionHql;
+
+	@Inject
+	@BatchProperty
+	private String partitionMappingThreads;
+
+	@Inject
+	@BatchProperty
+	private String partitionsPerThread;
+
 	@Inject
 	@BatchProperty
 	private String rowsPerPartition;
 
+	@Inject
+	@BatchProperty
+	private String splitIdRange;
+
+	@Inject
+	@BatchProperty
+	private String workStealing;
+
 	private EntityManagerFactory emf;
 
+	/**
+	 * The number of rows of each entity type, counted while computing the partition units. Key: the entity name;
+	 * Value: the number of rows.
+	 */
+	private final Map<String, Long> rowCounts = new ConcurrentHashMap<>();
+
 	public PartitionMapper() {
 	}
 
@@ -77,17 +146,29 @@ public class PartitionMapper implements javax.batch.api.partition.PartitionMappe
 	 * @param hql
 	 * @param maxThreads
 	 * @param rowsPerPartition
+	 * @param partitionsPerThread
+	 * @param splitIdRange
+	 * @param workStealing
+	 * @param partitionHql
 	 */
 	PartitionMapper(EntityManagerFactory emf,
 			String fetchSize,
 			String hql,
 			String rowsPerPartition,
-			String maxThreads) {
+			String maxThreads,
+			String partitionsPerThread,
+			String splitIdRange,
+			String workStealing,
+			String partitionHql) {
 		this.emf = emf;
 		this.fetchSize = fetchSize;
 		this.hql = hql;
 		this.maxThreads = maxThreads;
 		this.rowsPerPartition = rowsPerPartition;
+		this.partitionsPerThread = partitionsPerThread;
+		this.splitIdRange = splitIdRange;
+		this.workStealing = workStealing;
+		this.partitionHql = partitionHql;
 	}
 
 	@Override
@@ -95,43 +176,92 @@ public class PartitionMapper implements javax.batch.api.partition.PartitionMappe
 
 		JobContextData jobData = (JobContextData) jobContext.getTransientUserData();
 		SessionFactory sessionFactory = null;
-		Session session = null;
 		StatelessSession ss = null;
-		ScrollableResults scroll = null;
 
 		try {
 			emf = jobData.getEntityManagerFactory();
 			sessionFactory = emf.unwrap( SessionFactory.class );
-			session = sessionFactory.openSession();
 			ss = sessionFactory.openStatelessSession();
+			rowCounts.clear();
 
 			List<Class<?>> rootEntities = jobData.getEntityTypes();
 			List<PartitionBound> partitionBounds = new ArrayList<>();
 			Class<?> entityType;
+			final Type selection = typeOfSelection( hql, jobData );
+			final boolean stealing = selection != Type.HQL && Boolean.parseBoolean( workStealing );
+			StepProgress stepProgress = (StepProgress) stepContext.getTransientUserData();
+
+			if ( stepProgress != null && stepProgress.getPartitionBounds() != null ) {
+				// restart: reuse the partitions of the previous execution, some of them are already indexed
+				partitionBounds = stepProgress.getPartitionBounds();
+				LOGGER.infof( "%d partition bounds reused from the previous execution.", partitionBounds.size() );
+			}
+			else {
+				switch ( selection ) {
+					case HQL:
+						entityType = rootEntities.get( 0 );
+						if ( Boolean.parseBoolean( partitionHql ) ) {
+							String subquery = PartitionedHql.toSubquery( hql );
+							partitionBounds = buildPartitionUnitsFromHql( ss, sessionFactory, entityType, subquery,
+									getRowsPerPartition( Arrays.asList( entityType ) ) );
+						}
+						else {
+							partitionBounds.add( new PartitionBound( entityType, null, null ) );
+						}
+						break;
 
-			switch ( typeOfSelection( hql, jobData.getCriteria() ) ) {
-				case HQL:
-					entityType = rootEntities.get( 0 );
-					partitionBounds.add( new PartitionBound( entityType, null, null ) );
-					break;
-
-				case CRITERIA:
-					entityType = rootEntities.get( 0 );
-					scroll = buildScrollableResults( ss, session, entityType, jobData.getCriteria() );
-					partitionBounds = buildPartitionUnitsFrom( scroll, entityType );
-					break;
-
-				case FULL_ENTITY:
-					for ( Class<?> clz : rootEntities ) {
-						scroll = buildScrollableResults( ss, session, clz, null );
-						partitionBounds.addAll( buildPartitionUnitsFrom( scroll, clz ) );
+					case CRITERIA:
+					case FULL_ENTITY:
+						// each root entity is partitioned independently, restricted by its own criteria if any
+						final int rows = getRowsPerPartition( rootEntities );
+						final int mappingThreads = partitionMappingThreads == null || partitionMappingThreads.isEmpty()
+								? 1 : Integer.parseInt( partitionMappingThreads );
+						if ( mappingThreads > 1 && rootEntities.size() > 1 ) {
+							partitionBounds = buildPartitionUnitsConcurrently( sessionFactory, rootEntities, jobData,
+									rows, mappingThreads );
+						}
+						else {
+							for ( Class<?> clz : rootEntities ) {
+								partitionBounds.addAll( buildPartitionUnits( ss, sessionFactory, clz,
+										jobData.getCriteria( clz ), rows ) );
+							}
+						}
+						break;
+				}
+			}
+			// row counts not computed by the step progress setup listener
+			if ( stepProgress != null ) {
+				rowCounts.forEach( (entityName, rowCount) -> {
+					if ( !stepProgress.hasRowsToIndex( entityName ) ) {
+						stepProgress.setRowsToIndex( entityName, rowCount );
 					}
-					break;
+				} );
+			}
+			if ( stepProgress != null ) {
+				// written before the partitions start, so that a job restarted after a crash reuses them
+				stepProgress.setPartitionBounds( partitionBounds );
+				stepContext.setPersistentUserData( stepProgress );
+				StepProgressFile.write( jobContext.getInstanceId(), stepProgress );
+				if ( !stealing ) {
+					// workers stealing ranges are never skipped: the ranges are not bound to a worker
+					jobData.setCompletedPartitions( new HashSet<>( stepProgress.getCompletedPartitions() ) );
+					LOGGER.infof( "%d partitions completed by the previous execution.",
+							stepProgress.getCompletedPartitions().size() );
+				}
+			}
+			final int threads = Integer.valueOf( maxThreads );
+			if ( stealing ) {
+				// without step progress, nothing was indexed before: every range is available
+				Set<Integer> unavailableRanges = stepProgress != null
+						? stepProgress.getUnavailableRanges() : Collections.<Integer>emptySet();
+				IdRangeQueue rangeQueue = new IdRangeQueue( partitionBounds, unavailableRanges );
+				jobData.setRangeQueue( rangeQueue );
+				partitionBounds = buildWorkers( partitionBounds, threads );
+				LOGGER.infof( "%d ID ranges shared by %d partitions.", rangeQueue.size(), partitionBounds.size() );
 			}
 			jobData.setPartitionBounds( partitionBounds );
 
 			// Build partition plan
-			final int threads = Integer.valueOf( maxThreads );
 			final int partitions = partitionBounds.size();
 			final Properties[] props = new Properties[partitions];
 			LOGGER.infof( "%d partitions, %d threads.", partitions, threads );
@@ -149,34 +279,20 @@ public class PartitionMapper implements javax.batch.api.partition.PartitionMappe
 			return partitionPlan;
 		}
 		finally {
-			try {
-				if ( scroll != null ) {
-					scroll.close();
-				}
-			}
-			catch (Exception e) {
-				LOGGER.error( e );
-			}
 			try {
 				ss.close();
 			}
 			catch (Exception e) {
 				LOGGER.error( e );
 			}
-			try {
-				session.close();
-			}
-			catch (Exception e) {
-				LOGGER.error( e );
-			}
 		}
 	}
 
-	private Type typeOfSelection(String hql, Set<Criterion> criterions) {
+	private Type typeOfSelection(String hql, JobContextData jobData) {
 		if ( hql != null && !hql.isEmpty() ) {
 			return Type.HQL;
 		}
-		else if ( criterions != null && criterions.size() > 0 ) {
+		else if ( jobData.hasCriteria() ) {
 			return Type.CRITERIA;
 		}
 		else {
@@ -184,25 +300,396 @@ public class PartitionMapper implements javax.batch.api.partition.PartitionMappe
 		}
 	}
 
-	private List<PartitionBound> buildPartitionUnitsFrom(ScrollableResults scroll, Class<?> clazz) {
+	/**
+	 * Get the number of rows per partition. If a number of partitions per thread is given, it is derived from the
+	 * number of rows to index for the given entity types, so that each thread receives this number of partitions.
+	 * Otherwise, or if the number of rows to index of an entity type is unknown, the fixed number of rows per
+	 * partition is used.
+	 *
+	 * @param entityTypes the entity types to partition
+	 * @return the number of rows per partition, at least 1.
+	 */
+	private int getRowsPerPartition(List<Class<?>> entityTypes) {
+		final int fixedRows = Integer.parseInt( rowsPerPartition );
+		if ( partitionsPerThread == null || partitionsPerThread.isEmpty()
+				|| Integer.parseInt( partitionsPerThread ) <= 0 ) {
+			return fixedRows;
+		}
+		StepProgress stepProgress = (StepProgress) stepContext.getTransientUserData();
+		long totalRows = 0;
+		for ( Class<?> entityType : entityTypes ) {
+			if ( stepProgress == null || !stepProgress.hasRowsToIndex( entityType.getName() ) ) {
+				LOGGER.warnf( "Number of rows to index of entity %s unknown, %s rows per partition are used instead.",
+						entityType.getName(), rowsPerPartition );
+				return fixedRows;
+			}
+			totalRows += stepProgress.getRowsToIndex( entityType.getName() );
+		}
+		final long targetPartitions = (long) Integer.parseInt( maxThreads )
+				* Integer.parseInt( partitionsPerThread );
+		final long rows = Math.max( 1L, ( totalRows + targetPartitions - 1 ) / targetPartitions );
+		LOGGER.infof( "%d rows to index for %d threads: %d rows per partition.",
+				totalRows, Integer.parseInt( maxThreads ), rows );
+		return (int) Math.min( Integer.MAX_VALUE, rows );
+	}
+
+	/**
+	 * Build the partition units of the given entity type, using the cheapest strategy available: splitting the ID
+	 * range if requested and possible, then selecting the boundaries using window functions if no criteria restricts
+	 * the selection, and finally scrolling the ordered IDs.
+	 *
+	 * @param ss the stateless session
+	 * @param sessionFactory the session factory
+	 * @param clazz the entity type to partition
+	 * @param criterions the criteria restricting the selection, may be null
+	 * @param rowsPerPartition the number of rows per partition
+	 * @return the partition units of the given entity type
+	 */
+	private List<PartitionBound> buildPartitionUnits(StatelessSession ss, SessionFactory sessionFactory,
+			Class<?> clazz, Set<Criterion> criterions, int rowsPerPartition) {
+		if ( Boolean.parseBoolean( splitIdRange ) ) {
+			List<PartitionBound> partitionUnits = buildPartitionUnitsFromIdRange( ss, sessionFactory, clazz,
+					criterions, rowsPerPartition );
+			if ( partitionUnits != null ) {
+				return partitionUnits;
+			}
+		}
+		if ( criterions == null || criterions.isEmpty() ) {
+			List<Object> upperBounds = selectBoundariesUsingRowNumber( ss, sessionFactory, clazz, rowsPerPartition );
+			if ( upperBounds != null ) {
+				return buildPartitionUnitsFrom( upperBounds, clazz );
+			}
+		}
+		ScrollableResults scroll = null;
+		try {
+			scroll = buildScrollableResults( ss, clazz, criterions );
+			return buildPartitionUnitsFrom( scroll, clazz, rowsPerPartition );
+		}
+		finally {
+			if ( scroll != null ) {
+				scroll.close();
+			}
+		}
+	}
+
+	/**
+	 * Build the partition units of the given entity types concurrently, each entity type using its own stateless
+	 * session. The partition units are returned in the order of the entity types, as if they were built one after
+	 * another.
+	 *
+	 * @param sessionFactory the session factory
+	 * @param entityTypes the entity types to partition
+	 * @param jobData the job context data, holding the criteria of each entity type
+	 * @param rowsPerPartition the number of rows per partition
+	 * @param mappingThreads the maximum number of entity types partitioned at the same time
+	 * @return the partition units of all the entity types
+	 * @throws Exception if the partitioning of an entity type fails.
+	 */
+	private List<PartitionBound> buildPartitionUnitsConcurrently(SessionFactory sessionFactory,
+			List<Class<?>> entityTypes, JobContextData jobData, int rowsPerPartition, int mappingThreads)
+			throws Exception {
+		final int threads = Math.min( mappingThreads, entityTypes.size() );
+		LOGGER.infof( "%d entity types partitioned by %d threads.", entityTypes.size(), threads );
+		final AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool( threads, r -> {
+			Thread thread = new Thread( r, "BatchIndexingJob-partitionMapper-" + threadCount.incrementAndGet() );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		try {
+			List<Future<List<PartitionBound>>> futures = new ArrayList<>();
+			for ( Class<?> clz : entityTypes ) {
+				futures.add( executor.submit( () -> {
+					StatelessSession ss = sessionFactory.openStatelessSession();
+					try {
+						return buildPartitionUnits( ss, sessionFactory, clz, jobData.getCriteria( clz ),
+								rowsPerPartition );
+					}
+					finally {
+						ss.close();
+					}
+				} ) );
+			}
+			List<PartitionBound> partitionUnits = new ArrayList<>();
+			for ( Future<List<PartitionBound>> future : futures ) {
+				try {
+					partitionUnits.addAll( future.get() );
+				}
+				catch (ExecutionException e) {
+					if ( e.getCause() instanceof Exception ) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+			return partitionUnits;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Build the partitions stealing their work from the given ID ranges. Each entity type receives one partition per
+	 * thread, but never more partitions than ranges. The number of partitions only depends on the ranges, so a
+	 * restarted job has the same partitions as the previous execution.
+	 *
+	 * @param ranges the ID ranges to index
+	 * @param threads the number of threads
+	 * @return the unbounded partition units, one per partition
+	 */
+	private List<PartitionBound> buildWorkers(List<PartitionBound> ranges, int threads) {
+		Map<Class<?>, Integer> rangeCounts = new LinkedHashMap<>();
+		for ( PartitionBound range : ranges ) {
+			rangeCounts.merge( range.getEntityType(), 1, Integer::sum );
+		}
+		List<PartitionBound> workers = new ArrayList<>();
+		rangeCounts.forEach( (clz, count) -> {
+			for ( int i = 0; i < Math.min( threads, count ); i++ ) {
+				workers.add( new PartitionBound( clz ) );
+			}
+		} );
+		return workers;
+	}
+
+	private List<PartitionBound> buildPartitionUnitsFrom(ScrollableResults scroll, Class<?> clazz,
+			int rowsPerPartition) {
 		List<PartitionBound> partitionUnits = new ArrayList<>();
-		final int rowsPerPartition = Integer.parseInt( this.rowsPerPartition );
 		Object lowerID = null;
 		Object upperID = null;
-		while ( scroll.scroll( rowsPerPartition ) ) {
-			lowerID = upperID;
-			upperID = scroll.get( 0 );
-			partitionUnits.add( new PartitionBound( clazz, lowerID, upperID ) );
+		long rowCount = 0;
+		// every row is visited to count the rows, which costs the same as scrolling by partition
+		while ( scroll.next() ) {
+			rowCount++;
+			if ( rowCount % rowsPerPartition == 0 ) {
+				lowerID = upperID;
+				upperID = scroll.get( 0 );
+				partitionUnits.add( new PartitionBound( clazz, lowerID, upperID ) );
+			}
 		}
 		// add an additional partition on the tail
 		lowerID = upperID;
 		upperID = null;
 		partitionUnits.add( new PartitionBound( clazz, lowerID, upperID ) );
+		rowCounts.put( clazz.getName(), rowCount );
 		return partitionUnits;
 	}
 
-	private ScrollableResults buildScrollableResults(StatelessSession ss,
-			Session session, Class<?> clazz, Set<Criterion> criterions) {
+	/**
+	 * Build the partition units of the entities selected by the user's HQL, by scrolling their ordered IDs.
+	 *
+	 * @param ss the stateless session
+	 * @param sessionFactory the session factory
+	 * @param clazz the entity type selected by the HQL
+	 * @param subquery the user's HQL, as a subquery selecting the entities
+	 * @param rowsPerPartition the number of rows per partition
+	 * @return the partition units of the HQL selection
+	 */
+	private List<PartitionBound> buildPartitionUnitsFromHql(StatelessSession ss, SessionFactory sessionFactory,
+			Class<?> clazz, String subquery, int rowsPerPartition) {
+		String idName = sessionFactory.getClassMetadata( clazz ).getIdentifierPropertyName();
+		ScrollableResults scroll = null;
+		try {
+			scroll = ss.createQuery( PartitionedHql.selectIds( subquery, clazz.getName(), idName ) )
+					.setFetchSize( Integer.parseInt( fetchSize ) )
+					.setReadOnly( true )
+					.scroll( ScrollMode.FORWARD_ONLY );
+			return buildPartitionUnitsFrom( scroll, clazz, rowsPerPartition );
+		}
+		finally {
+			if ( scroll != null ) {
+				scroll.close();
+			}
+		}
+	}
+
+	private List<PartitionBound> buildPartitionUnitsFrom(List<?> upperBounds, Class<?> clazz) {
+		List<PartitionBound> partitionUnits = new ArrayList<>();
+		Object lowerID = null;
+		for ( Object upperID : upperBounds ) {
+			partitionUnits.add( new PartitionBound( clazz, lowerID, upperID ) );
+			lowerID = upperID;
+		}
+		// add an additional partition on the tail
+		partitionUnits.add( new PartitionBound( clazz, lowerID, null ) );
+		return partitionUnits;
+	}
+
+	/**
+	 * Select the upper bounds of the partitions of the given entity type directly in the database, by numbering the
+	 * rows with the window function {@code ROW_NUMBER()} and keeping every {@code rowsPerPartition}-th ID. Only the
+	 * boundaries are transferred, instead of every ID of the table. The last row is selected too, to get the row
+	 * count.
+	 * <p>
+	 * The rows are numbered in the table of the entity type, without any restriction: entity types sharing their
+	 * table or a part of it with other entity types of an inheritance hierarchy, and entity types restricted by a SQL
+	 * {@code @Where} clause, are therefore not supported. Neither are the criteria restricting the selection, the
+	 * caller being expected to only use this method for unrestricted entity types.
+	 *
+	 * @param ss the stateless session
+	 * @param sessionFactory the session factory
+	 * @param clazz the entity type to partition
+	 * @param rowsPerPartition the number of rows per partition
+	 * @return the ordered upper bounds, or {@code null} if the dialect or the mapping of the entity type is not
+	 * supported, in which case the IDs have to be scrolled.
+	 */
+	private List<Object> selectBoundariesUsingRowNumber(StatelessSession ss, SessionFactory sessionFactory,
+			Class<?> clazz, int rowsPerPartition) {
+		Dialect dialect = ( (SessionFactoryImplementor) sessionFactory ).getDialect();
+		if ( !supportsWindowFunctions( dialect ) ) {
+			return null;
+		}
+		ClassMetadata metadata = sessionFactory.getClassMetadata( clazz );
+		if ( !( metadata instanceof AbstractEntityPersister ) ) {
+			return null;
+		}
+		AbstractEntityPersister persister = (AbstractEntityPersister) metadata;
+		if ( persister.isInherited() || persister.getEntityMetamodel().hasSubclasses() ) {
+			// the table may contain the rows of other entity types, told apart by a discriminator or a join
+			return null;
+		}
+		if ( !persister.filterFragment( "", Collections.emptyMap() ).trim().isEmpty() ) {
+			// the rows are restricted by a @Where clause
+			return null;
+		}
+		String[] idColumns = persister.getIdentifierColumnNames();
+		if ( idColumns.length != 1 ) {
+			// composite IDs cannot be compared as a single value
+			return null;
+		}
+		String sql = buildRowNumberSql( persister.getTableName(), idColumns[0], rowsPerPartition );
+		List<?> rows = ss.createSQLQuery( sql )
+				.addScalar( "bound_id", persister.getIdentifierType() )
+				.addScalar( "row_num", LongType.INSTANCE )
+				.addScalar( "total_rows", LongType.INSTANCE )
+				.setFetchSize( Integer.parseInt( fetchSize ) )
+				.setReadOnly( true )
+				.list();
+		List<Object> upperBounds = new ArrayList<>();
+		long rowCount = 0;
+		for ( Object row : rows ) {
+			Object[] columns = (Object[]) row;
+			if ( (Long) columns[1] % rowsPerPartition == 0 ) {
+				upperBounds.add( columns[0] );
+			}
+			rowCount = (Long) columns[2];
+		}
+		rowCounts.put( clazz.getName(), rowCount );
+		LOGGER.infof( "%d partition boundaries of entity %s selected using window functions.",
+				upperBounds.size(), clazz.getName() );
+		return upperBounds;
+	}
+
+	/**
+	 * Build the SQL query selecting every {@code rowsPerPartition}-th ID of the given table, and its last ID, with
+	 * their row number and the row count. The query only uses {@code ROW_NUMBER()}, {@code COUNT(*)} as a window
+	 * function and {@code FLOOR()}, supported by every dialect accepted by {@link #supportsWindowFunctions(Dialect)}.
+	 * The modulo is computed with {@code FLOOR()}, since SQL Server has no {@code MOD()} function.
+	 *
+	 * @param tableName the table name, quoted by the dialect if needed
+	 * @param idColumn the ID column name, quoted by the dialect if needed
+	 * @param rowsPerPartition the number of rows per partition
+	 * @return the SQL query
+	 */
+	static String buildRowNumberSql(String tableName, String idColumn, int rowsPerPartition) {
+		return "select bound_id, row_num, total_rows from ("
+				+ " select " + idColumn + " as bound_id,"
+				+ " row_number() over ( order by " + idColumn + " ) as row_num,"
+				+ " count(*) over () as total_rows"
+				+ " from " + tableName
+				+ " ) numbered_rows"
+				+ " where row_num = floor( row_num / " + rowsPerPartition + " ) * " + rowsPerPartition
+				+ " or row_num = total_rows"
+				+ " order by bound_id";
+	}
+
+	/**
+	 * Split the ID range of the given entity type into partitions of equal ID span. Only the minimum and the maximum
+	 * ID are selected, which the database reads from the ends of the ID index, so no row is counted nor read. The
+	 * number of partitions is derived from the number of rows to index if it was already counted in the step progress,
+	 * or else from the ID span, the IDs being assumed dense. This works well for numeric and mostly dense IDs, e.g.
+	 * generated surrogate keys; sparse IDs lead to unbalanced partitions.
+	 *
+	 * @param ss the stateless session
+	 * @param sessionFactory the session factory
+	 * @param clazz the entity type to partition
+	 * @param criterions the criteria restricting the selection, may be null
+	 * @param rowsPerPartition the number of rows per partition
+	 * @return the partition units, or {@code null} if the ID of the entity type is not an integral number.
+	 */
+	private List<PartitionBound> buildPartitionUnitsFromIdRange(StatelessSession ss, SessionFactory sessionFactory,
+			Class<?> clazz, Set<Criterion> criterions, int rowsPerPartition) {
+		ClassMetadata metadata = sessionFactory.getClassMetadata( clazz );
+		Class<?> idClass = metadata.getIdentifierType().getReturnedClass();
+		if ( idClass != Long.class && idClass != Integer.class && idClass != Short.class ) {
+			LOGGER.infof( "ID of entity %s is not an integral number (%s), its ID range cannot be split.",
+					clazz.getName(), idClass.getName() );
+			return null;
+		}
+		String idName = metadata.getIdentifierPropertyName();
+		Criteria criteria = ss.createCriteria( clazz );
+		if ( criterions != null ) {
+			criterions.forEach( c -> criteria.add( c ) );
+		}
+		Object[] stats = (Object[]) criteria
+				.setProjection( Projections.projectionList()
+						.add( Projections.min( idName ) )
+						.add( Projections.max( idName ) ) )
+				.setReadOnly( true )
+				.uniqueResult();
+
+		List<Object> upperBounds = new ArrayList<>();
+		if ( stats[0] == null ) {
+			rowCounts.put( clazz.getName(), 0L );
+		}
+		else {
+			long min = ( (Number) stats[0] ).longValue();
+			long max = ( (Number) stats[1] ).longValue();
+			StepProgress stepProgress = (StepProgress) stepContext.getTransientUserData();
+			long rowCount;
+			if ( stepProgress != null && stepProgress.hasRowsToIndex( clazz.getName() ) ) {
+				rowCount = stepProgress.getRowsToIndex( clazz.getName() );
+			}
+			else {
+				// estimated from the ID span, as if the IDs were dense
+				rowCount = max - min + 1;
+				rowCounts.put( clazz.getName(), rowCount );
+			}
+			long partitions = Math.max( 1L, ( rowCount + rowsPerPartition - 1 ) / rowsPerPartition );
+			long span = ( max - min ) / partitions + 1;
+			for ( long bound = min + span; bound <= max; bound += span ) {
+				upperBounds.add( toIdType( bound, idClass ) );
+			}
+		}
+		LOGGER.infof( "ID range of entity %s split into %d partitions.", clazz.getName(), upperBounds.size() + 1 );
+		return buildPartitionUnitsFrom( upperBounds, clazz );
+	}
+
+	private static Object toIdType(long id, Class<?> idClass) {
+		if ( idClass == Integer.class ) {
+			return (int) id;
+		}
+		else if ( idClass == Short.class ) {
+			return (short) id;
+		}
+		return id;
+	}
+
+	/**
+	 * Whether the given dialect supports the window functions used to select the partition boundaries.
+	 *
+	 * @param dialect the dialect of the session factory
+	 * @return true if the window functions are supported.
+	 */
+	boolean supportsWindowFunctions(Dialect dialect) {
+		return dialect instanceof PostgreSQL81Dialect
+				|| dialect instanceof Oracle8iDialect
+				|| dialect instanceof SQLServer2005Dialect
+				|| dialect instanceof DB2Dialect;
+	}
+
+	private ScrollableResults buildScrollableResults(StatelessSession ss, Class<?> clazz,
+			Set<Criterion> criterions) {
 		Criteria criteria = ss.createCriteria( clazz );
 		if ( criterions != null ) {
 			criterions.forEach( c -> criteria.add( c ) );
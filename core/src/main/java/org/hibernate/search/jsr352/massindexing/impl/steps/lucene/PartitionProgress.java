@@ -7,6 +7,10 @@
 package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 
 import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Mincong Huang
@@ -18,10 +22,38 @@ public class PartitionProgress implements Serializable {
 	private int partitionId;
 	private long workDone;
 
+	/**
+	 * The indexes of the ID ranges completed by this partition, when partitions steal their work.
+	 */
+	private Set<Integer> completedRanges;
+
+	/**
+	 * The index of the ID range this partition is working on, or null if there's none.
+	 */
+	private Integer currentRange;
+
+	/**
+	 * The number of flushes (commits) of each index done by this partition. Key: the index name; Value: the number of
+	 * flushes. It may be updated by the write-behind thread of the partition.
+	 */
+	private Map<String, Long> flushCounts;
+
+	/**
+	 * The chunk size chosen by the checkpoint algorithm for this partition, or 0 if the chunk size is fixed.
+	 */
+	private int chunkSize;
+
+	/**
+	 * Whether all the entities of this partition are read and durable in the index.
+	 */
+	private boolean completed;
+
 	public PartitionProgress(int partitionId, String entityName) {
 		this.partitionId = partitionId;
 		this.entityName = entityName;
 		this.workDone = 0L;
+		this.completedRanges = new HashSet<>();
+		this.flushCounts = new ConcurrentHashMap<>();
 	}
 
 	/**
@@ -57,6 +89,46 @@ public class PartitionProgress implements Serializable {
 		this.workDone = workDone;
 	}
 
+	public void indexFlushed(String indexName) {
+		flushCounts.merge( indexName, 1L, Long::sum );
+	}
+
+	public Map<String, Long> getFlushCounts() {
+		return flushCounts;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	public void setCompleted(boolean completed) {
+		this.completed = completed;
+	}
+
+	public void rangesCompleted(Set<Integer> rangeIndexes) {
+		completedRanges.addAll( rangeIndexes );
+	}
+
+	public Set<Integer> getCompletedRanges() {
+		return completedRanges;
+	}
+
+	public Integer getCurrentRange() {
+		return currentRange;
+	}
+
+	public void setCurrentRange(Integer currentRange) {
+		this.currentRange = currentRange;
+	}
+
 	@Override
 	public String toString() {
 		return "PartitionProgress [workDone=" + workDone + ", entityName=" + entityName
@@ -9,6 +9,7 @@ package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 import java.io.Serializable;
 
 import javax.batch.api.partition.AbstractPartitionAnalyzer;
+import javax.batch.runtime.context.JobContext;
 import javax.batch.runtime.context.StepContext;
 import javax.inject.Inject;
 
@@ -24,6 +25,9 @@ public class ProgressAggregator extends AbstractPartitionAnalyzer {
 
 	private static final Logger LOGGER = Logger.getLogger( ProgressAggregator.class );
 
+	@Inject
+	private JobContext jobContext;
+
 	@Inject
 	private StepContext stepContext;
 
@@ -31,6 +35,10 @@ public class ProgressAggregator extends AbstractPartitionAnalyzer {
 	 * Analyze data obtained from different partition plans via partition data collectors. The current analyze is to
 	 * summarize to their progresses : workDone = workDone1 + workDone2 + ... + workDoneN. Then it displays the total
 	 * mass index progress in percentage. This method is very similar to the current simple progress monitor.
+	 * <p>
+	 * When a partition is completed, or an ID range is claimed or completed, the copy of the step progress is written
+	 * again: the step-level persistent user data is only saved at the end of the step, so without the copy a job
+	 * restarted after a crash would index these partitions again.
 	 *
 	 * @param fromCollector the indexing progress of one partition, obtained from partition collector's method
 	 * #collectPartitionData()
@@ -41,13 +49,20 @@ public class ProgressAggregator extends AbstractPartitionAnalyzer {
 		// update step-level progress using partition-level progress
 		PartitionProgress partitionProgress = (PartitionProgress) fromCollector;
 		StepProgress stepProgress = (StepProgress) stepContext.getTransientUserData();
-		stepProgress.updateProgress( partitionProgress );
+		if ( stepProgress.updateProgress( partitionProgress ) ) {
+			StepProgressFile.write( jobContext.getInstanceId(), stepProgress );
+		}
 
 		// logging
 		StringBuilder sb = new StringBuilder( System.lineSeparator() );
 		for ( String msg : stepProgress.getProgresses() ) {
 			sb.append( System.lineSeparator() ).append( "\t" ).append( msg );
 		}
+		stepProgress.getFlushCounts().forEach( (indexName, count) -> sb.append( System.lineSeparator() )
+				.append( "\t" ).append( indexName ).append( ": " ).append( count ).append( " flushes." ) );
+		stepProgress.getChunkSizes().forEach( (partitionId, chunkSize) -> sb.append( System.lineSeparator() )
+				.append( "\t" ).append( "partition " ).append( partitionId ).append( ": chunk size " )
+				.append( chunkSize ).append( "." ) );
 		sb.append( System.lineSeparator() );
 		LOGGER.info( sb.toString() );
 	}
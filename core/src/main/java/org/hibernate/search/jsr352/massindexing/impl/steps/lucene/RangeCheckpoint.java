@@ -0,0 +1,44 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import java.io.Serializable;
+
+/**
+ * Checkpoint of a partition stealing its work: the ID range the partition is working on, and the last ID read in this
+ * range.
+ *
+ * @author Mincong Huang
+ */
+public class RangeCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 4521097683247759612L;
+
+	private final Integer rangeIndex;
+	private final Serializable lastId;
+
+	public RangeCheckpoint(Integer rangeIndex, Serializable lastId) {
+		this.rangeIndex = rangeIndex;
+		this.lastId = lastId;
+	}
+
+	/**
+	 * @return the index of the range, or null if the partition has no more range to work on.
+	 */
+	public Integer getRangeIndex() {
+		return rangeIndex;
+	}
+
+	public Serializable getLastId() {
+		return lastId;
+	}
+
+	@Override
+	public String toString() {
+		return "RangeCheckpoint [rangeIndex=" + rangeIndex + ", lastId=" + lastId + "]";
+	}
+}
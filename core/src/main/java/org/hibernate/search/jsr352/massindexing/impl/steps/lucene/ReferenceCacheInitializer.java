@@ -0,0 +1,75 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.hibernate.search.jsr352.massindexing.impl.util.ReferenceEntityCache;
+import org.hibernate.search.spi.InstanceInitializer;
+
+/**
+ * Instance initializer resolving the uninitialized proxies of reference entities from the job's reference entity
+ * cache, instead of loading them from the database. Other values are initialized by the delegate.
+ *
+ * @author Mincong Huang
+ */
+public class ReferenceCacheInitializer implements InstanceInitializer {
+
+	private final InstanceInitializer delegate;
+	private final ReferenceEntityCache cache;
+
+	public ReferenceCacheInitializer(InstanceInitializer delegate, ReferenceEntityCache cache) {
+		this.delegate = delegate;
+		this.cache = cache;
+	}
+
+	@Override
+	public Object unproxy(Object value) {
+		if ( value instanceof HibernateProxy ) {
+			LazyInitializer lazyInitializer = ( (HibernateProxy) value ).getHibernateLazyInitializer();
+			if ( lazyInitializer.isUninitialized() ) {
+				Object cached = cache.get( lazyInitializer.getEntityName(), lazyInitializer.getIdentifier() );
+				if ( cached != null ) {
+					return cached;
+				}
+			}
+		}
+		return delegate.unproxy( value );
+	}
+
+	@Override
+	public Class<?> getClass(Object entity) {
+		if ( entity instanceof HibernateProxy ) {
+			LazyInitializer lazyInitializer = ( (HibernateProxy) entity ).getHibernateLazyInitializer();
+			if ( lazyInitializer.isUninitialized() ) {
+				Object cached = cache.get( lazyInitializer.getEntityName(), lazyInitializer.getIdentifier() );
+				if ( cached != null ) {
+					return cached.getClass();
+				}
+			}
+		}
+		return delegate.getClass( entity );
+	}
+
+	@Override
+	public <T> Collection<T> initializeCollection(Collection<T> value) {
+		return delegate.initializeCollection( value );
+	}
+
+	@Override
+	public <K, V> Map<K, V> initializeMap(Map<K, V> value) {
+		return delegate.initializeMap( value );
+	}
+
+	@Override
+	public Object[] initializeArray(Object[] value) {
+		return delegate.initializeArray( value );
+	}
+}
@@ -7,12 +7,19 @@
 package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 
+import org.hibernate.search.jsr352.massindexing.impl.util.PartitionBound;
 import org.jboss.logging.Logger;
 
 /**
@@ -51,11 +58,52 @@ public class StepProgress implements Serializable {
 	 */
 	private Map<String, Long> entityTotal;
 
+	/**
+	 * The boundaries of the partitions computed by the first execution of the partition mapper, or the ID ranges
+	 * claimed by the partitions when they steal their work. They are kept so that a restarted job works on the same
+	 * partitions, without scanning the IDs again. The partitions of an entity type are contiguous, so only their upper
+	 * bounds are stored. Key: the entity type, in the order of the partitions; Value: the upper bounds of its
+	 * partitions, the last one being null.
+	 */
+	private LinkedHashMap<Class<?>, List<Object>> partitionUpperBounds;
+
+	/**
+	 * The indexes of the ID ranges completely indexed across all the partitions.
+	 */
+	private Set<Integer> completedRanges;
+
+	/**
+	 * A map of the ID ranges being indexed. Key: the partition id; Value: the index of the range.
+	 */
+	private Map<Integer, Integer> currentRanges;
+
+	/**
+	 * A map of the number of flushes of each index, per partition. Key: the partition id; Value: the number of flushes
+	 * per index name.
+	 */
+	private Map<Integer, Map<String, Long>> partitionFlushCounts;
+
+	/**
+	 * A map of the chunk sizes chosen by the checkpoint algorithm, when the chunk size is adaptive. Key: the partition
+	 * id; Value: the chunk size.
+	 */
+	private Map<Integer, Integer> chunkSizes;
+
+	/**
+	 * The ids of the partitions whose entities are all indexed. They are skipped by a restarted job.
+	 */
+	private Set<Integer> completedPartitions;
+
 	public StepProgress() {
 		partitionProgress = new HashMap<>();
 		partitionTotal = new HashMap<>();
 		entityProgress = new HashMap<>();
 		entityTotal = new HashMap<>();
+		completedRanges = new HashSet<>();
+		currentRanges = new HashMap<>();
+		partitionFlushCounts = new HashMap<>();
+		chunkSizes = new TreeMap<>();
+		completedPartitions = new HashSet<>();
 	}
 
 	/**
@@ -63,8 +111,10 @@ public class StepProgress implements Serializable {
 	 * step contains multiple partitions)
 	 *
 	 * @param pp partition-level indexing progress
+	 * @return true if the partitions completed or the ID ranges claimed changed, i.e. what a restarted job must know
+	 * to skip the work already done.
 	 */
-	public void updateProgress(PartitionProgress pp) {
+	public boolean updateProgress(PartitionProgress pp) {
 		long prevDone = partitionProgress.getOrDefault( pp.getPartitionId(), 0L );
 		long currDone = pp.getWorkDone();
 		if ( currDone < prevDone ) {
@@ -74,6 +124,21 @@ public class StepProgress implements Serializable {
 		}
 		increment( pp.getEntityName(), currDone - prevDone );
 		increment( pp.getPartitionId(), currDone - prevDone );
+
+		partitionFlushCounts.put( pp.getPartitionId(), new HashMap<>( pp.getFlushCounts() ) );
+		boolean changed = false;
+		if ( pp.isCompleted() ) {
+			changed |= completedPartitions.add( pp.getPartitionId() );
+		}
+		if ( pp.getChunkSize() > 0 ) {
+			chunkSizes.put( pp.getPartitionId(), pp.getChunkSize() );
+		}
+		changed |= completedRanges.addAll( pp.getCompletedRanges() );
+		Integer prevRange = pp.getCurrentRange() != null
+				? currentRanges.put( pp.getPartitionId(), pp.getCurrentRange() )
+				: currentRanges.remove( pp.getPartitionId() );
+		changed |= !Objects.equals( prevRange, pp.getCurrentRange() );
+		return changed;
 	}
 
 	private void increment(String entityName, long increment) {
@@ -134,6 +199,77 @@ public class StepProgress implements Serializable {
 		return results;
 	}
 
+	/**
+	 * Get the number of flushes of each index across all the partitions.
+	 *
+	 * @return a map of the number of flushes per index name.
+	 */
+	public Map<String, Long> getFlushCounts() {
+		Map<String, Long> flushCounts = new TreeMap<>();
+		for ( Map<String, Long> counts : partitionFlushCounts.values() ) {
+			counts.forEach( (indexName, count) -> flushCounts.merge( indexName, count, Long::sum ) );
+		}
+		return flushCounts;
+	}
+
+	/**
+	 * @return the chunk size of each partition, when the chunk size is adaptive.
+	 */
+	public Map<Integer, Integer> getChunkSizes() {
+		return chunkSizes;
+	}
+
+	public Set<Integer> getCompletedPartitions() {
+		return completedPartitions;
+	}
+
+	/**
+	 * @return the partition bounds stored by a previous execution, or null if they were not computed yet.
+	 */
+	public List<PartitionBound> getPartitionBounds() {
+		if ( partitionUpperBounds == null ) {
+			return null;
+		}
+		List<PartitionBound> partitionBounds = new ArrayList<>();
+		partitionUpperBounds.forEach( (entityType, upperBounds) -> {
+			Object lowerBound = null;
+			for ( Object upperBound : upperBounds ) {
+				partitionBounds.add( new PartitionBound( entityType, lowerBound, upperBound ) );
+				lowerBound = upperBound;
+			}
+		} );
+		return partitionBounds;
+	}
+
+	/**
+	 * Store the partition bounds computed by the partition mapper.
+	 *
+	 * @param partitionBounds the contiguous partition bounds of each entity type, grouped by entity type.
+	 */
+	public void setPartitionBounds(List<PartitionBound> partitionBounds) {
+		partitionUpperBounds = new LinkedHashMap<>();
+		for ( PartitionBound partitionBound : partitionBounds ) {
+			partitionUpperBounds.computeIfAbsent( partitionBound.getEntityType(), k -> new ArrayList<>() )
+					.add( partitionBound.getUpperBound() );
+		}
+	}
+
+	/**
+	 * Get the ID ranges which must not be claimed again: the ranges already indexed, and the ranges resumed by the
+	 * partitions which were working on them.
+	 *
+	 * @return the indexes of the unavailable ranges
+	 */
+	public Set<Integer> getUnavailableRanges() {
+		Set<Integer> unavailable = new HashSet<>( completedRanges );
+		unavailable.addAll( currentRanges.values() );
+		return unavailable;
+	}
+
+	public boolean hasRowsToIndex(String entityName) {
+		return entityTotal.containsKey( entityName );
+	}
+
 	public long getRowsToIndex(String entityName) {
 		return entityTotal.get( entityName );
 	}
@@ -0,0 +1,116 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Copy of the step progress of step {@code produceLuceneDoc}, kept in a file under the temporary directory, per job
+ * instance. The batch runtime only persists the step-level user data at the end of the step, so a job killed in the
+ * middle of the step would lose the partition bounds and the partitions completed. The copy is written once the
+ * partitions are mapped, before they start, and each time the progress of a partition must survive a crash. A
+ * restarted job reads it, like the private directories of the bulk-load mode.
+ *
+ * @author Mincong Huang
+ */
+public final class StepProgressFile {
+
+	private StepProgressFile() {
+	}
+
+	/**
+	 * Write the given step progress, replacing the previous copy of the same job instance. The copy is written to a
+	 * temporary file first, then moved, so that a crash while writing does not corrupt the previous copy.
+	 *
+	 * @param instanceId the job instance ID
+	 * @param stepProgress the step progress
+	 * @throws IOException if the file cannot be written.
+	 */
+	public static void write(long instanceId, StepProgress stepProgress) throws IOException {
+		Path path = getPath( instanceId );
+		Path tmp = path.resolveSibling( path.getFileName() + ".tmp" );
+		try ( OutputStream out = Files.newOutputStream( tmp );
+				ObjectOutputStream oos = new ObjectOutputStream( out ) ) {
+			oos.writeObject( stepProgress );
+		}
+		try {
+			Files.move( tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move( tmp, path, StandardCopyOption.REPLACE_EXISTING );
+		}
+	}
+
+	/**
+	 * Read the step progress written by a previous execution of the given job instance.
+	 *
+	 * @param instanceId the job instance ID
+	 * @return the step progress, or null if no execution of this job instance wrote it.
+	 * @throws IOException if the file cannot be read.
+	 * @throws ClassNotFoundException if an entity type of the step progress cannot be loaded.
+	 */
+	public static StepProgress read(long instanceId) throws IOException, ClassNotFoundException {
+		Path path = getPath( instanceId );
+		if ( !Files.exists( path ) ) {
+			return null;
+		}
+		try ( InputStream in = Files.newInputStream( path );
+				ObjectInputStream ois = new ContextClassLoaderObjectInputStream( in ) ) {
+			return (StepProgress) ois.readObject();
+		}
+	}
+
+	/**
+	 * Delete the step progress of the given job instance, once the step is completed.
+	 *
+	 * @param instanceId the job instance ID
+	 * @throws IOException if the file cannot be deleted.
+	 */
+	public static void delete(long instanceId) throws IOException {
+		Files.deleteIfExists( getPath( instanceId ) );
+	}
+
+	private static Path getPath(long instanceId) {
+		return Paths.get( System.getProperty( "java.io.tmpdir" ),
+				"hibernate-search-jsr352-step-progress-" + instanceId + ".ser" );
+	}
+
+	/**
+	 * Object input stream resolving the entity types of the step progress with the context class loader, which sees
+	 * the entities of the application.
+	 */
+	private static class ContextClassLoaderObjectInputStream extends ObjectInputStream {
+
+		private ContextClassLoaderObjectInputStream(InputStream in) throws IOException {
+			super( in );
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+			if ( classLoader != null ) {
+				try {
+					return Class.forName( desc.getName(), false, classLoader );
+				}
+				catch (ClassNotFoundException e) {
+					// primitive types and classes of the runtime are resolved by default
+				}
+			}
+			return super.resolveClass( desc );
+		}
+	}
+}
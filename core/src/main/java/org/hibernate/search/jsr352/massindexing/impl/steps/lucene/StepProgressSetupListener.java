@@ -6,20 +6,30 @@
  */
 package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 
+import javax.batch.api.BatchProperty;
 import javax.batch.api.listener.AbstractStepListener;
 import javax.batch.runtime.context.JobContext;
 import javax.batch.runtime.context.StepContext;
 import javax.inject.Inject;
 import javax.persistence.EntityManagerFactory;
 
+import org.hibernate.SQLQuery;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Projections;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.search.jsr352.massindexing.RowCountStrategy;
 import org.hibernate.search.jsr352.massindexing.impl.JobContextData;
 import org.jboss.logging.Logger;
 
 /**
- * Listener for managing the step indexing progress.
+ * Listener for managing the step indexing progress. The number of rows to index for each entity type is computed
+ * according to the {@link RowCountStrategy} of the job.
  *
  * @author Mincong Huang
  */
@@ -33,21 +43,49 @@ public class StepProgressSetupListener extends AbstractStepListener {
 	@Inject
 	private StepContext stepContext;
 
+	@Inject
+	@BatchProperty
+	private String hql;
+
+	@Inject
+	@BatchProperty
+	private String partitionHql;
+
+	@Inject
+	@BatchProperty
+	private String rowCountStrategy;
+
 	/**
 	 * Setup the step-level indexing progress. The {@code StepProgress} will be initialized if this is the first start,
 	 * or remain as it is if this is a restart. {@code StepProgress} is stored as the transient user data <b>for the
 	 * principle thread</b>(*). Transient user data is shared with {@code ProgressAggregator}, therefore,
 	 * {@code ProgressAggregator} can update the indexing progress through transient user data.
 	 * <p>
+	 * On restart, the copy written by the previous execution in the {@link StepProgressFile} is preferred to the
+	 * persistent user data: it is written during the step, so it is at least as recent, and it survives a crash. On
+	 * the first execution, a copy left by another job instance with the same ID, e.g. with an in-memory job repository,
+	 * is deleted.
+	 * <p>
 	 * (*): for partitions' sub-threads, they store other things as a transient user data.
+	 *
+	 * @throws Exception if the copy of the step progress cannot be read.
 	 */
 	@Override
-	public void beforeStep() {
-		StepProgress stepProgress = (StepProgress) stepContext.getPersistentUserData();
+	public void beforeStep() throws Exception {
+		StepProgress stepProgress = null;
+		JobContextData jobData = (JobContextData) jobContext.getTransientUserData();
+		if ( jobData.isRestarted() ) {
+			stepProgress = StepProgressFile.read( jobContext.getInstanceId() );
+		}
+		else {
+			StepProgressFile.delete( jobContext.getInstanceId() );
+		}
+		if ( stepProgress == null ) {
+			stepProgress = (StepProgress) stepContext.getPersistentUserData();
+		}
 
 		if ( stepProgress == null ) {
 			stepProgress = new StepProgress();
-			JobContextData jobData = (JobContextData) jobContext.getTransientUserData();
 			EntityManagerFactory emf = jobData.getEntityManagerFactory();
 
 			SessionFactory sessionFactory = emf.unwrap( SessionFactory.class );
@@ -55,9 +93,19 @@ public class StepProgressSetupListener extends AbstractStepListener {
 
 			try {
 				session = sessionFactory.openSession();
+				RowCountStrategy strategy = getRowCountStrategy();
 				for ( Class<?> entityType : jobData.getEntityTypes() ) {
-					long rowCount = rowCount( entityType, session );
-					stepProgress.setRowsToIndex( entityType.getName(), rowCount );
+					switch ( strategy ) {
+						case STATISTICS:
+							stepProgress.setRowsToIndex( entityType.getName(), estimateRowCount( entityType, session ) );
+							break;
+						case PARTITION_MAPPING:
+							// counted by the partition mapper
+							break;
+						default:
+							stepProgress.setRowsToIndex( entityType.getName(), rowCount( entityType, session ) );
+							break;
+					}
 				}
 			}
 			finally {
@@ -71,12 +119,90 @@ public class StepProgressSetupListener extends AbstractStepListener {
 
 	/**
 	 * Persist the step-level indexing progress after the end of the step's execution. This method is called when the
-	 * step is terminated by any reason, e.g. finished, stopped.
+	 * step is terminated by any reason, e.g. finished, stopped. The copy of the step progress is updated too, so that
+	 * it stays the most recent one.
+	 *
+	 * @throws Exception if the copy of the step progress cannot be written.
 	 */
 	@Override
-	public void afterStep() {
+	public void afterStep() throws Exception {
 		StepProgress stepProgress = (StepProgress) stepContext.getTransientUserData();
 		stepContext.setPersistentUserData( stepProgress );
+		StepProgressFile.write( jobContext.getInstanceId(), stepProgress );
+	}
+
+	private RowCountStrategy getRowCountStrategy() {
+		if ( rowCountStrategy == null || rowCountStrategy.isEmpty() ) {
+			return RowCountStrategy.EXACT;
+		}
+		RowCountStrategy strategy = RowCountStrategy.valueOf( rowCountStrategy );
+		if ( strategy == RowCountStrategy.PARTITION_MAPPING && hql != null && !hql.isEmpty()
+				&& !Boolean.parseBoolean( partitionHql ) ) {
+			// HQL selections are only counted by the partition mapping if they are partitioned
+			return RowCountStrategy.EXACT;
+		}
+		return strategy;
+	}
+
+	/**
+	 * Estimate the number of rows of the given entity type using the statistics of its table. The exact count is used
+	 * if the dialect or the mapping of the entity type is not supported, or if the table has no statistics yet.
+	 * <p>
+	 * The table is looked up in the schema where the entity type is stored, not in any schema having a table of this
+	 * name: PostgreSQL resolves the table name through {@code regclass}, like any table name of a SQL statement, and
+	 * MySQL uses the schema qualifying the table name, or the current database.
+	 */
+	private long estimateRowCount(Class<?> clazz, Session session) {
+		SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) session.getSessionFactory();
+		Dialect dialect = sessionFactory.getDialect();
+		ClassMetadata metadata = sessionFactory.getClassMetadata( clazz );
+		String tableName = metadata instanceof AbstractEntityPersister
+				? ( (AbstractEntityPersister) metadata ).getTableName() : null;
+		if ( tableName == null || tableName.contains( "(" ) ) {
+			// sub-selects have no statistics
+			tableName = null;
+		}
+		SQLQuery query = null;
+		if ( tableName != null && dialect instanceof PostgreSQL81Dialect ) {
+			query = session.createSQLQuery( "select cast( reltuples as bigint ) from pg_class"
+					+ " where oid = cast( :tableName as regclass )" );
+			query.setParameter( "tableName", tableName );
+		}
+		else if ( tableName != null && dialect instanceof MySQLDialect ) {
+			int dot = tableName.lastIndexOf( '.' );
+			if ( dot < 0 ) {
+				query = session.createSQLQuery( "select table_rows from information_schema.tables"
+						+ " where table_schema = database() and table_name = :tableName" );
+			}
+			else {
+				query = session.createSQLQuery( "select table_rows from information_schema.tables"
+						+ " where table_schema = :schemaName and table_name = :tableName" );
+				query.setParameter( "schemaName", toCatalogName( tableName.substring( 0, dot ), dialect ) );
+			}
+			query.setParameter( "tableName", toCatalogName( tableName, dialect ) );
+		}
+		if ( query != null ) {
+			Number estimate = (Number) query
+					.setMaxResults( 1 )
+					.uniqueResult();
+			if ( estimate != null && estimate.longValue() >= 0 ) {
+				LOGGER.infof( "%d rows estimated to index for entity type %s", estimate.longValue(), clazz.getName() );
+				return estimate.longValue();
+			}
+		}
+		LOGGER.infof( "No row count statistics for entity type %s, counting rows.", clazz.getName() );
+		return rowCount( clazz, session );
+	}
+
+	/**
+	 * Get the name of the table or schema as stored in the MySQL catalog: without qualifier and quotes.
+	 */
+	private static String toCatalogName(String name, Dialect dialect) {
+		String unqualified = name.substring( name.lastIndexOf( '.' ) + 1 );
+		if ( unqualified.length() > 1 && unqualified.charAt( 0 ) == dialect.openQuote() ) {
+			return unqualified.substring( 1, unqualified.length() - 1 );
+		}
+		return unqualified;
 	}
 
 	private long rowCount(Class<?> clazz, Session session) {
@@ -0,0 +1,61 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.DelegatingAnalyzerWrapper;
+
+/**
+ * Analyzer of a private index writer of the bulk-load mode. Each field is analyzed by the analyzer of the entity type,
+ * unless the work being added maps the field to another analyzer, chosen by an analyzer discriminator, like the index
+ * managers do when they add a document.
+ * <p>
+ * The field to analyzer map is set before each document is added, so an instance must only be used by one thread at a
+ * time.
+ *
+ * @author Mincong Huang
+ */
+public class WorkAnalyzer extends DelegatingAnalyzerWrapper {
+
+	private final Analyzer entityAnalyzer;
+	private final Function<String, Analyzer> analyzersByName;
+	private final Map<String, Analyzer> namedAnalyzers = new HashMap<>();
+	private Map<String, String> fieldToAnalyzerMap = Collections.emptyMap();
+
+	/**
+	 * @param entityAnalyzer the analyzer of the entity type
+	 * @param analyzersByName the function resolving an analyzer from its name
+	 */
+	public WorkAnalyzer(Analyzer entityAnalyzer, Function<String, Analyzer> analyzersByName) {
+		super( PER_FIELD_REUSE_STRATEGY );
+		this.entityAnalyzer = entityAnalyzer;
+		this.analyzersByName = analyzersByName;
+	}
+
+	/**
+	 * Set the analyzers chosen for the fields of the next document to add.
+	 *
+	 * @param fieldToAnalyzerMap the analyzer name per field name, or null if there's none.
+	 */
+	public void setFieldToAnalyzerMap(Map<String, String> fieldToAnalyzerMap) {
+		this.fieldToAnalyzerMap = fieldToAnalyzerMap == null ? Collections.emptyMap() : fieldToAnalyzerMap;
+	}
+
+	@Override
+	protected Analyzer getWrappedAnalyzer(String fieldName) {
+		String analyzerName = fieldToAnalyzerMap.get( fieldName );
+		if ( analyzerName == null ) {
+			return entityAnalyzer;
+		}
+		return namedAnalyzers.computeIfAbsent( analyzerName, analyzersByName );
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Locations of the private Lucene directories written by the partitions in bulk-load mode. The directories are kept
+ * under the temporary directory, per job instance, so that a restarted job finds the indexes of the partitions
+ * completed before the interruption.
+ *
+ * @author Mincong Huang
+ */
+public final class BulkLoadDirectories {
+
+	private BulkLoadDirectories() {
+	}
+
+	/**
+	 * Get the private directory of a partition for the given index.
+	 *
+	 * @param instanceId the job instance ID
+	 * @param indexName the name of the target index
+	 * @param partitionId the partition ID
+	 * @return the path of the directory, created if needed.
+	 * @throws IOException if the directory cannot be created.
+	 */
+	public static Path getPartitionDirectory(long instanceId, String indexName, int partitionId) throws IOException {
+		Path directory = getIndexDirectory( instanceId, indexName ).resolve( "partition-" + partitionId );
+		return Files.createDirectories( directory );
+	}
+
+	/**
+	 * Get the private directories of all the partitions for the given index.
+	 *
+	 * @param instanceId the job instance ID
+	 * @param indexName the name of the target index
+	 * @return the paths of the directories, empty if no partition wrote in this index.
+	 * @throws IOException if the directories cannot be listed.
+	 */
+	public static List<Path> getPartitionDirectories(long instanceId, String indexName) throws IOException {
+		Path indexDirectory = getIndexDirectory( instanceId, indexName );
+		if ( !Files.isDirectory( indexDirectory ) ) {
+			return new ArrayList<>();
+		}
+		try ( Stream<Path> paths = Files.list( indexDirectory ) ) {
+			return paths.filter( Files::isDirectory ).sorted().collect( Collectors.toList() );
+		}
+	}
+
+	/**
+	 * Delete all the private directories of the given job instance.
+	 *
+	 * @param instanceId the job instance ID
+	 * @throws IOException if a file cannot be deleted.
+	 */
+	public static void delete(long instanceId) throws IOException {
+		Path root = getRootDirectory( instanceId );
+		if ( !Files.exists( root ) ) {
+			return;
+		}
+		try ( Stream<Path> paths = Files.walk( root ) ) {
+			for ( Path path : paths.sorted( Comparator.reverseOrder() ).collect( Collectors.toList() ) ) {
+				Files.delete( path );
+			}
+		}
+	}
+
+	private static Path getIndexDirectory(long instanceId, String indexName) {
+		return getRootDirectory( instanceId ).resolve( indexName );
+	}
+
+	private static Path getRootDirectory(long instanceId) {
+		return Paths.get( System.getProperty( "java.io.tmpdir" ), "hibernate-search-jsr352-bulk-load-" + instanceId );
+	}
+}
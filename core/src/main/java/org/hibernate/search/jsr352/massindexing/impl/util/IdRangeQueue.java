@@ -0,0 +1,72 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Queue of ID ranges shared by the partitions of the same entity type, when partitions steal their work instead of
+ * being assigned a fixed range. Each range is identified by its index in the list of ranges computed by the partition
+ * mapper, so that the progress of the ranges can be persisted and the queue rebuilt after a restart.
+ *
+ * @author Mincong Huang
+ */
+public class IdRangeQueue {
+
+	private final List<PartitionBound> ranges;
+
+	/**
+	 * The indexes of the ranges not claimed yet. Key: the entity name; Value: the queue of range indexes.
+	 */
+	private final Map<String, Queue<Integer>> pendingRanges;
+
+	/**
+	 * @param ranges all the ranges to index, ordered by entity type and by ID
+	 * @param unavailableRanges the indexes of the ranges which must not be claimed, because they are already indexed
+	 * or resumed by the partition working on them
+	 */
+	public IdRangeQueue(List<PartitionBound> ranges, Set<Integer> unavailableRanges) {
+		this.ranges = ranges;
+		this.pendingRanges = new HashMap<>();
+		for ( int i = 0; i < ranges.size(); i++ ) {
+			Queue<Integer> queue = pendingRanges.computeIfAbsent( ranges.get( i ).getEntityName(),
+					entityName -> new ConcurrentLinkedQueue<>() );
+			if ( !unavailableRanges.contains( i ) ) {
+				queue.add( i );
+			}
+		}
+	}
+
+	/**
+	 * Claim the next range of the given entity type.
+	 *
+	 * @param entityName the name of the entity type
+	 * @return the index of the claimed range, or null if all the ranges of this entity type are claimed.
+	 */
+	public Integer claim(String entityName) {
+		Queue<Integer> queue = pendingRanges.get( entityName );
+		return queue == null ? null : queue.poll();
+	}
+
+	public PartitionBound getRange(int rangeIndex) {
+		return ranges.get( rangeIndex );
+	}
+
+	public int size() {
+		return ranges.size();
+	}
+
+	@Override
+	public String toString() {
+		return "IdRangeQueue [ranges=" + ranges.size() + ", pendingRanges=" + pendingRanges + "]";
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.search.engine.metadata.impl.EmbeddedTypeMetadata;
+import org.hibernate.search.engine.metadata.impl.TypeMetadata;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+
+/**
+ * Utility methods inspecting the {@code @IndexedEmbedded} associations of an indexed entity, as described by the index
+ * metadata of its document builder.
+ *
+ * @author Mincong Huang
+ */
+public class IndexedEmbeddedUtil {
+
+	private IndexedEmbeddedUtil() {
+	}
+
+	/**
+	 * Get the paths of the single-valued (to-one) associations embedded in the index of the given entity type,
+	 * including the nested ones, e.g. {@code company} and {@code company.address}. These associations can be fetched
+	 * with a join without multiplying the rows of the root entity.
+	 *
+	 * @param sessionFactory the session factory holding the mapping of the entity
+	 * @param entityMetadata the Hibernate mapping of the entity
+	 * @param typeMetadata the index metadata of the entity, given by its document builder
+	 * @return the association paths, parents before children.
+	 */
+	public static List<String> getToOneEmbeddedPaths(SessionFactory sessionFactory,
+			ClassMetadata entityMetadata, TypeMetadata typeMetadata) {
+		return getToOneEmbeddedPaths( sessionFactory, entityMetadata, typeMetadata, Collections.emptySet() );
+	}
+
+	/**
+	 * Get the paths of the single-valued (to-one) associations embedded in the index of the given entity type, except
+	 * the associations to the given entity names and the associations below them.
+	 *
+	 * @param sessionFactory the session factory holding the mapping of the entity
+	 * @param entityMetadata the Hibernate mapping of the entity
+	 * @param typeMetadata the index metadata of the entity, given by its document builder
+	 * @param excludedEntityNames the names of the associated entities whose paths are excluded, e.g. the reference
+	 * entities, which are not loaded from the database
+	 * @return the association paths, parents before children.
+	 */
+	public static List<String> getToOneEmbeddedPaths(SessionFactory sessionFactory,
+			ClassMetadata entityMetadata, TypeMetadata typeMetadata, Set<String> excludedEntityNames) {
+		List<String> paths = new ArrayList<>();
+		collectToOneEmbeddedPaths( sessionFactory, entityMetadata, typeMetadata, excludedEntityNames, "", paths );
+		return paths;
+	}
+
+	private static void collectToOneEmbeddedPaths(SessionFactory sessionFactory,
+			ClassMetadata entityMetadata, TypeMetadata typeMetadata, Set<String> excludedEntityNames, String prefix,
+			List<String> paths) {
+		List<String> propertyNames = Arrays.asList( entityMetadata.getPropertyNames() );
+		for ( EmbeddedTypeMetadata embedded : typeMetadata.getEmbeddedTypeMetadata() ) {
+			String propertyName = embedded.getEmbeddedGetter().getName();
+			if ( !propertyNames.contains( propertyName ) ) {
+				continue;
+			}
+			Type type = entityMetadata.getPropertyType( propertyName );
+			if ( type.isEntityType() ) {
+				String associatedEntityName = ( (EntityType) type ).getAssociatedEntityName();
+				if ( excludedEntityNames.contains( associatedEntityName ) ) {
+					continue;
+				}
+				String path = prefix + propertyName;
+				paths.add( path );
+				ClassMetadata associatedMetadata = sessionFactory.getClassMetadata( associatedEntityName );
+				if ( associatedMetadata != null ) {
+					collectToOneEmbeddedPaths( sessionFactory, associatedMetadata, embedded, excludedEntityNames,
+							path + ".", paths );
+				}
+			}
+		}
+	}
+}
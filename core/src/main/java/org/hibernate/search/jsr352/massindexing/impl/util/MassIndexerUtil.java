@@ -13,6 +13,8 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.hibernate.criterion.Criterion;
@@ -50,4 +52,29 @@ public class MassIndexerUtil {
 			return criteria;
 		}
 	}
+
+	public static String serializeEntityCriteria(HashMap<String, Set<Criterion>> entityCriteria)
+			throws IOException {
+		try ( ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				ObjectOutputStream oos = new ObjectOutputStream( baos ) ) {
+			oos.writeObject( entityCriteria );
+			oos.flush();
+			byte bytes[] = baos.toByteArray();
+			return Base64.getEncoder().encodeToString( bytes );
+		}
+	}
+
+	public static Map<String, Set<Criterion>> deserializeEntityCriteria(String serialized)
+			throws IOException, ClassNotFoundException {
+		if ( StringHelper.isEmpty( serialized ) ) {
+			return Collections.emptyMap();
+		}
+		byte bytes[] = Base64.getDecoder().decode( serialized );
+		try ( ByteArrayInputStream bais = new ByteArrayInputStream( bytes );
+				ObjectInputStream ois = new ObjectInputStream( bais ) ) {
+			@SuppressWarnings("unchecked")
+			Map<String, Set<Criterion>> entityCriteria = (Map<String, Set<Criterion>>) ois.readObject();
+			return entityCriteria;
+		}
+	}
 }
@@ -6,6 +6,8 @@
  */
 package org.hibernate.search.jsr352.massindexing.impl.util;
 
+import java.io.Serializable;
+
 /**
  * Information about a target partition which can not be stored in the partition properties as String values. In
  * particular, the boundary properties help us to identify the lower boundary and upper boundary of a given partition,
@@ -14,7 +16,9 @@ package org.hibernate.search.jsr352.massindexing.impl.util;
  *
  * @author Mincong Huang
  */
-public class PartitionBound {
+public class PartitionBound implements Serializable {
+
+	private static final long serialVersionUID = -2981325867412470123L;
 
 	private Class<?> entityType;
 	private Object lowerBound;
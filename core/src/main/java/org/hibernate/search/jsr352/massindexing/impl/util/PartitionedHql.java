@@ -0,0 +1,104 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.util;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.hibernate.search.exception.SearchException;
+
+/**
+ * Utility wrapping the HQL selection of the user into queries restricted to an ID range and ordered by ID, so that the
+ * HQL selection can be partitioned and checkpointed like the criteria selection. The user's HQL is used as a subquery:
+ * <pre>
+ * select e from Entity e where e in (user's HQL) and e.id &gt;= :lowerBound and e.id &lt; :upperBound order by e.id
+ * </pre>
+ * The HQL is only inspected with regular expressions, not parsed. It cannot be wrapped if it has an {@code order by}
+ * clause anywhere, even in a subquery of its own, or if it selects without a {@code select} clause nor an alias. It
+ * cannot have parameters either, because the job has no value to bind them to.
+ *
+ * @author Mincong Huang
+ */
+public class PartitionedHql {
+
+	public static final String LOWER_BOUND = "lowerBound";
+	public static final String UPPER_BOUND = "upperBound";
+	public static final String LAST_ID = "lastId";
+
+	private static final Pattern ORDER_BY = Pattern.compile( "\\border\\s+by\\b", Pattern.CASE_INSENSITIVE );
+	private static final Pattern SELECT = Pattern.compile( "^\\s*select\\s", Pattern.CASE_INSENSITIVE );
+	private static final Pattern FROM_ALIAS = Pattern.compile( "^\\s*from\\s+[\\w.$]+\\s+(?:as\\s+)?(\\w+)",
+			Pattern.CASE_INSENSITIVE );
+	private static final Pattern STRING_LITERAL = Pattern.compile( "'(?:[^']|'')*'" );
+	private static final Pattern PARAMETER = Pattern.compile( "(?<![:\\w]):\\w+|\\?" );
+	private static final String[] KEYWORDS = { "where", "join", "inner", "left", "right", "full", "group" };
+
+	private PartitionedHql() {
+	}
+
+	/**
+	 * Turn the user's HQL into a subquery selecting the entities to index.
+	 *
+	 * @param hql the user's HQL
+	 * @return the subquery
+	 * @throws SearchException if the HQL cannot be wrapped.
+	 */
+	public static String toSubquery(String hql) {
+		if ( ORDER_BY.matcher( hql ).find() ) {
+			throw new SearchException( "The HQL '" + hql + "' cannot be partitioned, because it has an 'order by' "
+					+ "clause: the partitions are ordered by ID. Remove the 'order by' clause, "
+					+ "or disable partitionHql." );
+		}
+		if ( PARAMETER.matcher( STRING_LITERAL.matcher( hql ).replaceAll( "''" ) ).find() ) {
+			throw new SearchException( "The HQL '" + hql + "' cannot be partitioned, because it has parameters "
+					+ "which are never bound. Inline their values into the HQL." );
+		}
+		if ( SELECT.matcher( hql ).find() ) {
+			return hql.trim();
+		}
+		Matcher matcher = FROM_ALIAS.matcher( hql );
+		String alias = matcher.find() ? matcher.group( 1 ) : null;
+		if ( alias == null || Arrays.asList( KEYWORDS ).contains( alias.toLowerCase( Locale.ROOT ) ) ) {
+			throw new SearchException( "The HQL '" + hql + "' cannot be partitioned, because the selected entity "
+					+ "has no alias. Add an alias to the entity of the 'from' clause, or a 'select' clause." );
+		}
+		return "select " + alias + " " + hql.trim();
+	}
+
+	/**
+	 * Build the query selecting the ordered IDs of the entities selected by the subquery.
+	 */
+	public static String selectIds(String subquery, String entityName, String idName) {
+		return "select e." + idName + " from " + entityName + " e"
+				+ " where e in (" + subquery + ")"
+				+ " order by e." + idName;
+	}
+
+	/**
+	 * Build the query selecting the entities of a partition, ordered by ID. The named parameters
+	 * {@value #LOWER_BOUND}, {@value #UPPER_BOUND} and {@value #LAST_ID} must be bound if the partition has a lower
+	 * bound, an upper bound, and if the read resumes after a checkpoint, respectively.
+	 */
+	public static String selectEntities(String subquery, String entityName, String idName, PartitionBound bound,
+			boolean afterLastId) {
+		StringBuilder sb = new StringBuilder()
+				.append( "select e from " ).append( entityName ).append( " e" )
+				.append( " where e in (" ).append( subquery ).append( ")" );
+		if ( bound.getLowerBound() != null ) {
+			sb.append( " and e." ).append( idName ).append( " >= :" ).append( LOWER_BOUND );
+		}
+		if ( bound.getUpperBound() != null ) {
+			sb.append( " and e." ).append( idName ).append( " < :" ).append( UPPER_BOUND );
+		}
+		if ( afterLastId ) {
+			sb.append( " and e." ).append( idName ).append( " > :" ).append( LAST_ID );
+		}
+		return sb.append( " order by e." ).append( idName ).toString();
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.util;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only cache of reference entities, shared by all the partitions of a job. The entities are loaded and initialized
+ * once before the job starts, then detached. Afterwards, they are only read by the document builders, so the cache
+ * must not be modified once it is published in the job context data.
+ *
+ * @author Mincong Huang
+ */
+public class ReferenceEntityCache {
+
+	private final Map<String, Map<Serializable, Object>> entitiesByName = new HashMap<>();
+
+	/**
+	 * Add the entities of the given entity name to the cache.
+	 *
+	 * @param entityName the entity name
+	 * @param entitiesById the initialized entities, indexed by ID
+	 */
+	public void put(String entityName, Map<Serializable, Object> entitiesById) {
+		entitiesByName.put( entityName, entitiesById );
+	}
+
+	/**
+	 * @param entityName the entity name
+	 * @param id the entity ID
+	 * @return the cached entity, or null if the entity is not cached.
+	 */
+	public Object get(String entityName, Serializable id) {
+		Map<Serializable, Object> entitiesById = entitiesByName.get( entityName );
+		return entitiesById == null ? null : entitiesById.get( id );
+	}
+
+	/**
+	 * @return the names of the cached entity types.
+	 */
+	public Set<String> getEntityNames() {
+		return Collections.unmodifiableSet( entitiesByName.keySet() );
+	}
+
+	public boolean isEmpty() {
+		return entitiesByName.isEmpty();
+	}
+
+	public int size() {
+		return entitiesByName.values().stream()
+				.mapToInt( Map::size )
+				.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "ReferenceEntityCache [entityNames=" + entitiesByName.keySet() + ", size=" + size() + "]";
+	}
+}
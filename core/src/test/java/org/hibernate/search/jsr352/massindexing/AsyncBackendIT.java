@@ -0,0 +1,111 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.StepExecution;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.hibernate.search.jsr352.massindexing.test.entity.Company;
+import org.hibernate.search.jsr352.test.util.JobFactory;
+import org.hibernate.search.jsr352.test.util.JobTestUtil;
+import org.jboss.byteman.contrib.bmunit.BMRule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Integration tests of the indexing with an asynchronous backend, which only queues the works submitted by the item
+ * writer.
+ *
+ * @author Mincong Huang
+ */
+@RunWith(org.jboss.byteman.contrib.bmunit.BMUnitRunner.class)
+public class AsyncBackendIT {
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+
+	private static final int JOB_TIMEOUT_MS = 30_000;
+
+	private static final int DB_COMP_ROWS = 100;
+
+	private JobOperator jobOperator;
+	private EntityManagerFactory emf;
+
+	@Before
+	public void setup() {
+		Map<String, String> properties = new HashMap<>();
+		properties.put( "hibernate.search.default.worker.execution", "async" );
+
+		jobOperator = JobFactory.getJobOperator();
+		emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME, properties );
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		for ( int i = 0; i < DB_COMP_ROWS; i++ ) {
+			em.persist( new Company( "Company" + i ) );
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	/**
+	 * The queued works are slowed down, so that they are still queued when the item writer flushes the index: the
+	 * flush must wait for them, otherwise the documents are missing from the committed index when the job ends.
+	 */
+	@Test
+	@BMRule(
+			name = "Slow down the works applied by the asynchronous backend",
+			targetClass = "org.hibernate.search.backend.impl.lucene.works.AddWorkExecutor",
+			targetMethod = "performWork",
+			targetLocation = "AT ENTRY",
+			action = "Thread.sleep(5)"
+	)
+	public void testAsyncBackend() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntity( Company.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.checkpointFreq( 10 )
+				.chunksPerFlush( 5 )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+		}
+
+		// the index is read right after the job: only the committed documents are visible
+		EntityManager em = emf.createEntityManager();
+		try {
+			FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+			assertEquals( DB_COMP_ROWS, ftem.createFullTextQuery( new MatchAllDocsQuery(), Company.class )
+					.getResultSize() );
+		}
+		finally {
+			em.close();
+		}
+	}
+
+	@After
+	public void shutdownJPA() {
+		emf.close();
+	}
+}
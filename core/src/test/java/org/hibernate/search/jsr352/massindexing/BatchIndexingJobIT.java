@@ -24,6 +24,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.search.jpa.FullTextEntityManager;
@@ -246,6 +247,47 @@ public class BatchIndexingJobIT {
 		assertEquals( 0, findClass( Company.class, "name", "Microsoft" ).size() );
 	}
 
+	/**
+	 * Each chunk is flushed explicitly, so all the documents are in the index once the job completes, and they are all
+	 * counted by the step metrics.
+	 */
+	@Test
+	public void documentsWrittenAndCounted() throws InterruptedException,
+			IOException {
+		EntityManager em = emf.createEntityManager();
+		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+		ftem.purgeAll( Person.class );
+		ftem.purgeAll( Company.class );
+		ftem.purgeAll( WhoAmI.class );
+		ftem.flushToIndexes();
+		em.close();
+		assertEquals( 0, countDocuments( Company.class ) );
+
+		long executionId = BatchIndexingJob.forEntities( Company.class, Person.class, WhoAmI.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.checkpointFreq( 1 )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		assertEquals( BatchStatus.COMPLETED, jobExecution.getBatchStatus() );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			testBatchStatus( stepExecution );
+		}
+
+		assertEquals( DB_COMP_ROWS, countDocuments( Company.class ) );
+		assertEquals( DB_PERS_ROWS, countDocuments( Person.class ) );
+		assertEquals( DB_WHOS_ROWS, countDocuments( WhoAmI.class ) );
+	}
+
+	private int countDocuments(Class<?> clazz) {
+		EntityManager em = emf.createEntityManager();
+		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+		int count = ftem.createFullTextQuery( new MatchAllDocsQuery(), clazz ).getResultSize();
+		em.close();
+		return count;
+	}
+
 	private <T> List<T> findClass(Class<T> clazz, String key, String value) {
 		EntityManager em = emf.createEntityManager();
 		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
@@ -7,19 +7,25 @@
 package org.hibernate.search.jsr352.massindexing;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import javax.batch.operations.JobOperator;
 
+import org.hibernate.CacheMode;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.search.exception.SearchException;
 import org.hibernate.search.jsr352.massindexing.BatchIndexingJob;
+import org.hibernate.search.jsr352.massindexing.impl.util.MassIndexerUtil;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -39,10 +45,21 @@ public class BatchIndexingJobTest {
 	private static final boolean OPTIMIZE_AFTER_PURGE = true;
 	private static final boolean OPTIMIZE_AT_END = true;
 	private static final boolean PURGE_AT_START = true;
+	private static final boolean PARTITION_HQL = true;
+	private static final int DOCUMENT_BUILDER_THREADS = 4;
 	private static final int FETCH_SIZE = 100000;
 	private static final int MAX_RESULTS = 1000000;
 	private static final int MAX_THREADS = 2;
+	private static final int MAX_SESSION_ENTITIES = 1000;
+	private static final int PAGE_SIZE = 300;
+	private static final long CHECKPOINT_INTERVAL_MILLIS = 2000L;
+	private static final long CHUNK_BYTES = 4 * 1024 * 1024L;
+	private static final int CHUNKS_PER_FLUSH = 5;
+	private static final long FLUSH_INTERVAL_MILLIS = 30 * 1000L;
+	private static final int WRITE_BEHIND_CHUNKS = 3;
+	private static final int PARTITION_MAPPING_THREADS = 4;
 	private static final int ROWS_PER_PARTITION = 500;
+	private static final int REFERENCE_CACHE_SIZE = 50;
 
 	@Mock
 	private JobOperator mockedOperator;
@@ -64,13 +81,27 @@ public class BatchIndexingJobTest {
 		long executionID = BatchIndexingJob.forEntities( String.class, Integer.class )
 				.entityManagerFactoryReference( SESSION_FACTORY_NAME )
 				.underJavaSE( mockedOperator )
+				.cacheMode( CacheMode.GET )
+				.checkpointIntervalMillis( CHECKPOINT_INTERVAL_MILLIS )
+				.chunkBytes( CHUNK_BYTES )
+				.chunksPerFlush( CHUNKS_PER_FLUSH )
+				.documentBuilderThreads( DOCUMENT_BUILDER_THREADS )
 				.fetchSize( FETCH_SIZE )
+				.flushIntervalMillis( FLUSH_INTERVAL_MILLIS )
 				.maxResults( MAX_RESULTS )
+				.maxSessionEntities( MAX_SESSION_ENTITIES )
 				.maxThreads( MAX_THREADS )
 				.optimizeAfterPurge( OPTIMIZE_AFTER_PURGE )
 				.optimizeAtEnd( OPTIMIZE_AT_END )
+				.pageSize( PAGE_SIZE )
+				.partitionHql( PARTITION_HQL )
+				.referenceEntities( Long.class )
+				.referenceCacheSize( REFERENCE_CACHE_SIZE )
+				.partitionMappingThreads( PARTITION_MAPPING_THREADS )
+				.rowCountStrategy( RowCountStrategy.STATISTICS )
 				.rowsPerPartition( ROWS_PER_PARTITION )
 				.purgeAtStart( PURGE_AT_START )
+				.writeBehindChunks( WRITE_BEHIND_CHUNKS )
 				.start();
 		assertEquals( 1L, executionID );
 
@@ -78,13 +109,27 @@ public class BatchIndexingJobTest {
 				.start( Mockito.anyString(), propsCaptor.capture() );
 		Properties props = propsCaptor.getValue();
 		assertEquals( SESSION_FACTORY_NAME, props.getProperty( "entityManagerFactoryReference" ) );
+		assertEquals( DOCUMENT_BUILDER_THREADS, Integer.parseInt( props.getProperty( "documentBuilderThreads" ) ) );
+		assertEquals( CacheMode.GET.name(), props.getProperty( "cacheMode" ) );
+		assertEquals( CHECKPOINT_INTERVAL_MILLIS, Long.parseLong( props.getProperty( "checkpointIntervalMillis" ) ) );
+		assertEquals( CHUNK_BYTES, Long.parseLong( props.getProperty( "chunkBytes" ) ) );
+		assertEquals( CHUNKS_PER_FLUSH, Integer.parseInt( props.getProperty( "chunksPerFlush" ) ) );
 		assertEquals( FETCH_SIZE, Integer.parseInt( props.getProperty( "fetchSize" ) ) );
+		assertEquals( FLUSH_INTERVAL_MILLIS, Long.parseLong( props.getProperty( "flushIntervalMillis" ) ) );
 		assertEquals( MAX_RESULTS, Integer.parseInt( props.getProperty( "maxResults" ) ) );
 		assertEquals( OPTIMIZE_AFTER_PURGE, Boolean.parseBoolean( props.getProperty( "optimizeAfterPurge" ) ) );
 		assertEquals( OPTIMIZE_AT_END, Boolean.parseBoolean( props.getProperty( "optimizeAtEnd" ) ) );
+		assertEquals( PAGE_SIZE, Integer.parseInt( props.getProperty( "pageSize" ) ) );
+		assertEquals( PARTITION_HQL, Boolean.parseBoolean( props.getProperty( "partitionHql" ) ) );
+		assertEquals( PARTITION_MAPPING_THREADS, Integer.parseInt( props.getProperty( "partitionMappingThreads" ) ) );
+		assertEquals( RowCountStrategy.STATISTICS.name(), props.getProperty( "rowCountStrategy" ) );
+		assertEquals( Long.class.getName(), props.getProperty( "referenceEntities" ) );
+		assertEquals( REFERENCE_CACHE_SIZE, Integer.parseInt( props.getProperty( "referenceCacheSize" ) ) );
 		assertEquals( ROWS_PER_PARTITION, Integer.parseInt( props.getProperty( "rowsPerPartition" ) ) );
 		assertEquals( PURGE_AT_START, Boolean.parseBoolean( props.getProperty( "purgeAtStart" ) ) );
 		assertEquals( MAX_THREADS, Integer.parseInt( props.getProperty( "maxThreads" ) ) );
+		assertEquals( MAX_SESSION_ENTITIES, Integer.parseInt( props.getProperty( "maxSessionEntities" ) ) );
+		assertEquals( WRITE_BEHIND_CHUNKS, Integer.parseInt( props.getProperty( "writeBehindChunks" ) ) );
 
 		String rootEntities = propsCaptor.getValue().getProperty( "rootEntities" );
 		List<String> entityNames = Arrays.asList( rootEntities.split( "," ) );
@@ -134,6 +179,16 @@ public class BatchIndexingJobTest {
 		BatchIndexingJob.forEntity( null );
 	}
 
+	@Test(expected = NullPointerException.class)
+	public void testCacheMode_null() {
+		BatchIndexingJob.forEntity( String.class ).cacheMode( null );
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testReferenceEntities_null() {
+		BatchIndexingJob.forEntity( String.class ).referenceEntities( null );
+	}
+
 	@Test(expected = NullPointerException.class)
 	public void testRestrictedBy_stringNull() {
 		BatchIndexingJob.forEntity( String.class ).restrictedBy( (String) null );
@@ -144,6 +199,78 @@ public class BatchIndexingJobTest {
 		BatchIndexingJob.forEntity( String.class ).restrictedBy( (Criterion) null );
 	}
 
+	/**
+	 * The criteria of a single root entity are passed to the job separately from the criteria of all the root
+	 * entities.
+	 */
+	@Test
+	public void testRestrictedBy_entityCriteria() throws Exception {
+
+		ArgumentCaptor<Properties> propsCaptor = ArgumentCaptor.forClass( Properties.class );
+		BatchIndexingJob.forEntities( Integer.class, String.class )
+				.underJavaSE( mockedOperator )
+				.restrictedBy( Integer.class, Restrictions.isNotNull( "dummy" ) )
+				.start();
+
+		Mockito.verify( mockedOperator )
+				.start( Mockito.anyString(), propsCaptor.capture() );
+		Properties props = propsCaptor.getValue();
+		assertNull( props.getProperty( "criteria" ) );
+		Map<String, Set<Criterion>> entityCriteria = MassIndexerUtil
+				.deserializeEntityCriteria( props.getProperty( "entityCriteria" ) );
+		assertEquals( 1, entityCriteria.size() );
+		assertEquals( 1, entityCriteria.get( Integer.class.getName() ).size() );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRestrictedBy_entityNotRoot() {
+		BatchIndexingJob.forEntity( String.class ).restrictedBy( Integer.class, Restrictions.isEmpty( "dummy" ) );
+	}
+
+	/**
+	 * An HQL which cannot be wrapped into the partitioned queries makes the job fail at start, instead of being
+	 * silently read in a single partition.
+	 */
+	@Test(expected = SearchException.class)
+	public void testPartitionHql_orderBy() throws IOException {
+		BatchIndexingJob.forEntity( String.class )
+				.underJavaSE( mockedOperator )
+				.restrictedBy( "from Person p order by p.firstName" )
+				.partitionHql( true )
+				.start();
+	}
+
+	@Test(expected = SearchException.class)
+	public void testPartitionHql_namedParameter() throws IOException {
+		BatchIndexingJob.forEntity( String.class )
+				.underJavaSE( mockedOperator )
+				.restrictedBy( "from Person p where p.firstName = :firstName" )
+				.partitionHql( true )
+				.start();
+	}
+
+	@Test(expected = SearchException.class)
+	public void testPartitionHql_noAlias() throws IOException {
+		BatchIndexingJob.forEntity( String.class )
+				.underJavaSE( mockedOperator )
+				.restrictedBy( "from Person where firstName = 'John'" )
+				.partitionHql( true )
+				.start();
+	}
+
+	/**
+	 * A colon inside a string literal is not a named parameter.
+	 */
+	@Test
+	public void testPartitionHql_colonInLiteral() throws IOException {
+		long executionID = BatchIndexingJob.forEntity( String.class )
+				.underJavaSE( mockedOperator )
+				.restrictedBy( "from Person p where p.firstName = 'John:Doe'" )
+				.partitionHql( true )
+				.start();
+		assertEquals( 1L, executionID );
+	}
+
 	/**
 	 * A batch indexing job cannot have 2 types of restrictions in the same time. Either JPQL / HQL or Criteria approach
 	 * is used. Using both will leads to illegal argument exception.
@@ -154,4 +281,46 @@ public class BatchIndexingJobTest {
 				.restrictedBy( "from string" )
 				.restrictedBy( Restrictions.isEmpty( "dummy" ) );
 	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBulkLoad_withoutPurgeAtStart() throws IOException {
+		BatchIndexingJob.forEntity( String.class )
+				.bulkLoad( true )
+				.underJavaSE( mockedOperator )
+				.start();
+	}
+
+	/**
+	 * Entities loaded by IDs are read by keyset pages, so a page size is required.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testLoadEntitiesByIds_withoutPageSize() throws IOException {
+		BatchIndexingJob.forEntity( String.class )
+				.loadEntitiesByIds( true )
+				.underJavaSE( mockedOperator )
+				.start();
+	}
+
+	/**
+	 * The document builder threads get entities initialized by keyset page, so a page size is required.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testDocumentBuilderThreads_withoutPageSize() throws IOException {
+		BatchIndexingJob.forEntity( String.class )
+				.documentBuilderThreads( DOCUMENT_BUILDER_THREADS )
+				.underJavaSE( mockedOperator )
+				.start();
+	}
+
+	/**
+	 * The embedded associations are only join fetched when the entities are loaded by IDs.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testJoinFetchEmbedded_withoutLoadEntitiesByIds() throws IOException {
+		BatchIndexingJob.forEntity( String.class )
+				.joinFetchEmbedded( true )
+				.pageSize( PAGE_SIZE )
+				.underJavaSE( mockedOperator )
+				.start();
+	}
 }
@@ -0,0 +1,124 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.StepExecution;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.hibernate.search.jsr352.massindexing.test.entity.Company;
+import org.hibernate.search.jsr352.massindexing.test.entity.Person;
+import org.hibernate.search.jsr352.test.util.JobFactory;
+import org.hibernate.search.jsr352.test.util.JobTestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Integration test of the bulk-load mode, where the partitions write private indexes merged at the end of the job.
+ *
+ * @author Mincong Huang
+ */
+public class BulkLoadIT {
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+
+	private static final int JOB_TIMEOUT_MS = 10_000;
+
+	private static final int DB_COMP_ROWS = 100;
+	private static final int DB_PERS_ROWS = 50;
+
+	private JobOperator jobOperator;
+	private EntityManagerFactory emf;
+
+	@Before
+	public void setup() {
+		String[] names = new String[]{ "Google", "Red Hat", "Microsoft", "Facebook", "Amazon" };
+
+		jobOperator = JobFactory.getJobOperator();
+		emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME );
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		for ( int i = 0; i < DB_COMP_ROWS; i++ ) {
+			em.persist( new Company( names[i % 5] ) );
+		}
+		for ( int i = 0; i < DB_PERS_ROWS; i++ ) {
+			String id = String.format( Locale.ROOT, "%2d", i );
+			em.persist( new Person( id, "Person" + i, "" ) );
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	/**
+	 * The documents of all the partitions are in the target indexes once the private indexes are merged, and they are
+	 * analyzed like the documents written by the index managers.
+	 */
+	@Test
+	public void testBulkLoad() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntities( Company.class, Person.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.bulkLoad( true )
+				.purgeAtStart( true )
+				.checkpointFreq( 10 )
+				.rowsPerPartition( 20 )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+		}
+
+		assertEquals( DB_COMP_ROWS, countDocuments( Company.class ) );
+		assertEquals( DB_PERS_ROWS, countDocuments( Person.class ) );
+		assertEquals( DB_COMP_ROWS / 5, findClass( Company.class, "name", "google" ).size() );
+		assertEquals( DB_COMP_ROWS / 5, findClass( Company.class, "name", "Red Hat" ).size() );
+		assertEquals( 1, findClass( Person.class, "firstName", "Person7" ).size() );
+	}
+
+	private int countDocuments(Class<?> clazz) {
+		EntityManager em = emf.createEntityManager();
+		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+		int count = ftem.createFullTextQuery( new MatchAllDocsQuery(), clazz ).getResultSize();
+		em.close();
+		return count;
+	}
+
+	private <T> List<T> findClass(Class<T> clazz, String key, String value) {
+		EntityManager em = emf.createEntityManager();
+		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+		Query luceneQuery = ftem.getSearchFactory().buildQueryBuilder()
+				.forEntity( clazz ).get()
+				.keyword().onField( key ).matching( value )
+				.createQuery();
+		@SuppressWarnings("unchecked")
+		List<T> result = ftem.createFullTextQuery( luceneQuery ).getResultList();
+		em.close();
+		return result;
+	}
+
+	@After
+	public void shutdownJPA() {
+		emf.close();
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.StepExecution;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.hibernate.search.jsr352.massindexing.test.entity.Company;
+import org.hibernate.search.jsr352.test.util.JobFactory;
+import org.hibernate.search.jsr352.test.util.JobTestUtil;
+import org.jboss.byteman.contrib.bmunit.BMRule;
+import org.jboss.byteman.contrib.bmunit.BMRules;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Integration test of the submission of the chunks to the index managers, recording the calls received by the index
+ * managers.
+ *
+ * @author Mincong Huang
+ */
+@RunWith(org.jboss.byteman.contrib.bmunit.BMUnitRunner.class)
+public class ChunkSubmissionIT {
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+
+	private static final int JOB_TIMEOUT_MS = 10_000;
+
+	private static final int DB_COMP_ROWS = 100;
+	private static final int CHUNK_SIZE = 10;
+
+	private static final List<Integer> OPERATION_BATCHES = new CopyOnWriteArrayList<>();
+	private static final AtomicInteger STREAMED_WORKS = new AtomicInteger();
+
+	private JobOperator jobOperator;
+	private EntityManagerFactory emf;
+
+	/**
+	 * Called by Byteman when an index manager receives a batch of works.
+	 */
+	public static void operationsPerformed(int works) {
+		OPERATION_BATCHES.add( works );
+	}
+
+	/**
+	 * Called by Byteman when an index manager receives a single work, other than a flush.
+	 */
+	public static void workStreamed() {
+		STREAMED_WORKS.incrementAndGet();
+	}
+
+	@Before
+	public void setup() {
+		OPERATION_BATCHES.clear();
+		STREAMED_WORKS.set( 0 );
+		jobOperator = JobFactory.getJobOperator();
+		emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME );
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		for ( int i = 0; i < DB_COMP_ROWS; i++ ) {
+			em.persist( new Company( "Company" + i ) );
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	/**
+	 * Each chunk reaches the index manager of the entity type in a single call, and no work is streamed one by one.
+	 */
+	@Test
+	@BMRules(rules = {
+			@BMRule(
+					name = "Record the batches of works performed by the index managers",
+					targetClass = "org.hibernate.search.indexes.spi.DirectoryBasedIndexManager",
+					targetMethod = "performOperations",
+					targetLocation = "AT ENTRY",
+					action = "org.hibernate.search.jsr352.massindexing.ChunkSubmissionIT.operationsPerformed( $1.size() )"
+			),
+			@BMRule(
+					name = "Record the works streamed to the index managers",
+					targetClass = "org.hibernate.search.indexes.spi.DirectoryBasedIndexManager",
+					targetMethod = "performStreamOperation",
+					targetLocation = "AT ENTRY",
+					condition = "!( $1 instanceof org.hibernate.search.backend.FlushLuceneWork )",
+					action = "org.hibernate.search.jsr352.massindexing.ChunkSubmissionIT.workStreamed()"
+			)
+	})
+	public void testChunkSubmission() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntity( Company.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.checkpointFreq( CHUNK_SIZE )
+				.rowsPerPartition( DB_COMP_ROWS )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+		}
+
+		assertEquals( DB_COMP_ROWS, countDocuments( Company.class ) );
+		assertEquals( 0, STREAMED_WORKS.get() );
+		assertEquals( DB_COMP_ROWS / CHUNK_SIZE, OPERATION_BATCHES.size() );
+		for ( int works : OPERATION_BATCHES ) {
+			assertEquals( CHUNK_SIZE, works );
+		}
+	}
+
+	private int countDocuments(Class<?> clazz) {
+		EntityManager em = emf.createEntityManager();
+		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+		int count = ftem.createFullTextQuery( new MatchAllDocsQuery(), clazz ).getResultSize();
+		em.close();
+		return count;
+	}
+
+	@After
+	public void shutdownJPA() {
+		emf.close();
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.StepExecution;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.hibernate.search.jsr352.massindexing.test.entity.Book;
+import org.hibernate.search.jsr352.massindexing.test.entity.City;
+import org.hibernate.search.jsr352.massindexing.test.entity.Continent;
+import org.hibernate.search.jsr352.massindexing.test.entity.Country;
+import org.hibernate.search.jsr352.massindexing.test.entity.Library;
+import org.hibernate.search.jsr352.massindexing.test.entity.Store;
+import org.hibernate.search.jsr352.massindexing.test.entity.Warehouse;
+import org.hibernate.search.jsr352.test.util.JobFactory;
+import org.hibernate.search.jsr352.test.util.JobTestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Integration test of the document building by a pool of threads inside each partition.
+ *
+ * @author Mincong Huang
+ */
+public class DocumentBuilderThreadsIT {
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+
+	private static final int JOB_TIMEOUT_MS = 10_000;
+
+	private static final int DB_STORE_ROWS = 300;
+	private static final int DB_LIBRARY_ROWS = 100;
+	private static final int BOOKS_PER_LIBRARY = 3;
+	private static final int DB_WAREHOUSE_ROWS = 300;
+
+	private JobOperator jobOperator;
+	private EntityManagerFactory emf;
+
+	@Before
+	public void setup() {
+		jobOperator = JobFactory.getJobOperator();
+		emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME );
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		Continent europe = new Continent( "Europe" );
+		Continent asia = new Continent( "Asia" );
+		Country france = new Country( "France", europe );
+		Country china = new Country( "China", asia );
+		City[] cities = new City[]{
+				new City( "Paris", france ),
+				new City( "Lyon", france ),
+				new City( "Beijing", china ) };
+		em.persist( europe );
+		em.persist( asia );
+		em.persist( france );
+		em.persist( china );
+		for ( City city : cities ) {
+			em.persist( city );
+		}
+		for ( int i = 0; i < DB_STORE_ROWS; i++ ) {
+			em.persist( new Store( "Store" + i, cities[i % 3] ) );
+		}
+		for ( int i = 0; i < DB_WAREHOUSE_ROWS; i++ ) {
+			em.persist( new Warehouse( "Warehouse" + i, cities[i % 3] ) );
+		}
+		for ( int i = 0; i < DB_LIBRARY_ROWS; i++ ) {
+			Library library = new Library( "L" + i );
+			em.persist( library );
+			for ( int j = 0; j < BOOKS_PER_LIBRARY; j++ ) {
+				em.persist( new Book( "Book" + i + "x" + j, library ) );
+			}
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	/**
+	 * The documents built concurrently embed the lazy to-one associations ({@code city.country.continent}) and the lazy
+	 * collections ({@code books}) of their entities, initialized by the item reader for each page.
+	 */
+	@Test
+	public void testDocumentBuilderThreads() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntities( Store.class, Library.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.documentBuilderThreads( 4 )
+				.pageSize( 40 )
+				.checkpointFreq( 25 )
+				.rowsPerPartition( 150 )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+		}
+
+		assertEquals( DB_STORE_ROWS, countDocuments( Store.class ) );
+		assertEquals( DB_LIBRARY_ROWS, countDocuments( Library.class ) );
+		assertEquals( 1, findClass( Store.class, "name", "Store42" ).size() );
+		assertEquals( DB_STORE_ROWS / 3, findClass( Store.class, "city.name", "Lyon" ).size() );
+		assertEquals( DB_STORE_ROWS * 2 / 3, findClass( Store.class, "city.country.name", "France" ).size() );
+		assertEquals( DB_STORE_ROWS / 3, findClass( Store.class, "city.country.continent.name", "Asia" ).size() );
+		assertEquals( 1, findClass( Library.class, "books.title", "Book42x1" ).size() );
+	}
+
+	/**
+	 * The indexed getter of the warehouses reads their lazy city, which is not embedded, so it is not initialized by
+	 * the item reader: the documents reaching it are built while holding the lock of the partition session, and the
+	 * city names are all indexed.
+	 */
+	@Test
+	public void testDocumentBuilderThreads_lazyAssociationReadByGetter() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntity( Warehouse.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.documentBuilderThreads( 4 )
+				.pageSize( 40 )
+				.checkpointFreq( 25 )
+				.rowsPerPartition( 150 )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+		}
+
+		assertEquals( DB_WAREHOUSE_ROWS, countDocuments( Warehouse.class ) );
+		assertEquals( DB_WAREHOUSE_ROWS / 3, findClass( Warehouse.class, "cityName", "Paris" ).size() );
+		assertEquals( DB_WAREHOUSE_ROWS / 3, findClass( Warehouse.class, "cityName", "Lyon" ).size() );
+		assertEquals( DB_WAREHOUSE_ROWS / 3, findClass( Warehouse.class, "cityName", "Beijing" ).size() );
+	}
+
+	private int countDocuments(Class<?> clazz) {
+		EntityManager em = emf.createEntityManager();
+		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+		int count = ftem.createFullTextQuery( new MatchAllDocsQuery(), clazz ).getResultSize();
+		em.close();
+		return count;
+	}
+
+	private <T> List<T> findClass(Class<T> clazz, String key, String value) {
+		EntityManager em = emf.createEntityManager();
+		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+		Query luceneQuery = ftem.getSearchFactory().buildQueryBuilder()
+				.forEntity( clazz ).get()
+				.keyword().onField( key ).matching( value )
+				.createQuery();
+		@SuppressWarnings("unchecked")
+		List<T> result = ftem.createFullTextQuery( luceneQuery ).getResultList();
+		em.close();
+		return result;
+	}
+
+	@After
+	public void shutdownJPA() {
+		emf.close();
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Collections;
+
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.StepExecution;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.hibernate.search.jsr352.massindexing.impl.steps.lucene.StepProgress;
+import org.hibernate.search.jsr352.massindexing.test.entity.Company;
+import org.hibernate.search.jsr352.test.util.JobFactory;
+import org.hibernate.search.jsr352.test.util.JobTestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Integration test of the number of flushes of each index, recorded in the step progress.
+ *
+ * @author Mincong Huang
+ */
+public class FlushCountIT {
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+
+	private static final int JOB_TIMEOUT_MS = 10_000;
+
+	private static final int DB_COMP_ROWS = 100;
+	private static final int CHUNK_SIZE = 10;
+	private static final int CHUNKS_PER_FLUSH = 5;
+
+	private JobOperator jobOperator;
+	private EntityManagerFactory emf;
+
+	@Before
+	public void setup() {
+		jobOperator = JobFactory.getJobOperator();
+		emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME );
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		for ( int i = 0; i < DB_COMP_ROWS; i++ ) {
+			em.persist( new Company( "Company" + i ) );
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	/**
+	 * A single partition writes 10 chunks and flushes its index every 5 chunks: the index is flushed twice.
+	 */
+	@Test
+	public void testFlushCounts() throws InterruptedException {
+		long executionId = BatchIndexingJob.forEntity( Company.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.checkpointFreq( CHUNK_SIZE )
+				.chunksPerFlush( CHUNKS_PER_FLUSH )
+				.rowsPerPartition( DB_COMP_ROWS )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+
+		StepProgress stepProgress = null;
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+			if ( stepExecution.getStepName().equals( "produceLuceneDoc" ) ) {
+				stepProgress = (StepProgress) stepExecution.getPersistentUserData();
+			}
+		}
+		assertNotNull( stepProgress );
+		long expectedFlushes = DB_COMP_ROWS / CHUNK_SIZE / CHUNKS_PER_FLUSH;
+		assertEquals( Collections.singletonMap( Company.class.getName(), expectedFlushes ),
+				stepProgress.getFlushCounts() );
+	}
+
+	@After
+	public void shutdownJPA() {
+		emf.close();
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.StepExecution;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.apache.lucene.search.Query;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.hibernate.search.jsr352.massindexing.test.entity.City;
+import org.hibernate.search.jsr352.massindexing.test.entity.Continent;
+import org.hibernate.search.jsr352.massindexing.test.entity.Country;
+import org.hibernate.search.jsr352.massindexing.test.entity.Store;
+import org.hibernate.search.jsr352.test.util.JobFactory;
+import org.hibernate.search.jsr352.test.util.JobTestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Integration test of the keyset pagination, where each partition reads its entities by pages instead of a scrollable
+ * result.
+ *
+ * @author Mincong Huang
+ */
+public class KeysetPaginationIT {
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+
+	private static final int JOB_TIMEOUT_MS = 10_000;
+
+	private static final int DB_STORE_ROWS = 60;
+
+	private JobOperator jobOperator;
+	private EntityManagerFactory emf;
+
+	@Before
+	public void setup() {
+		jobOperator = JobFactory.getJobOperator();
+		emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME );
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		Continent europe = new Continent( "Europe" );
+		Continent asia = new Continent( "Asia" );
+		Country france = new Country( "France", europe );
+		Country china = new Country( "China", asia );
+		City[] cities = new City[]{
+				new City( "Paris", france ),
+				new City( "Lyon", france ),
+				new City( "Beijing", china ) };
+		em.persist( europe );
+		em.persist( asia );
+		em.persist( france );
+		em.persist( china );
+		for ( City city : cities ) {
+			em.persist( city );
+		}
+		for ( int i = 0; i < DB_STORE_ROWS; i++ ) {
+			em.persist( new Store( "Store" + i, cities[i % 3] ) );
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	/**
+	 * The lazy associations embedded in the documents, {@code city} and {@code city.country}, are loaded during the
+	 * document building, after the page of their store is fetched.
+	 */
+	@Test
+	public void testKeysetPagination_lazyEmbedded() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntity( Store.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.pageSize( 7 )
+				.checkpointFreq( 10 )
+				.rowsPerPartition( 20 )
+				.start();
+		assertCompleted( executionId );
+
+		assertEquals( DB_STORE_ROWS / 3, findClass( Store.class, "city.name", "Paris" ).size() );
+		assertEquals( DB_STORE_ROWS * 2 / 3, findClass( Store.class, "city.country.name", "France" ).size() );
+		assertEquals( DB_STORE_ROWS / 3, findClass( Store.class, "city.country.name", "China" ).size() );
+	}
+
+	/**
+	 * The chunks end in the middle of the keyset pages: the stores not indexed yet stay attached to the partition
+	 * session across the checkpoints, so their lazy associations are still loaded.
+	 */
+	@Test
+	public void testKeysetPagination_chunkSmallerThanPage() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntity( Store.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.pageSize( 15 )
+				.checkpointFreq( 4 )
+				.rowsPerPartition( 30 )
+				.start();
+		assertCompleted( executionId );
+
+		assertEquals( DB_STORE_ROWS / 3, findClass( Store.class, "city.name", "Lyon" ).size() );
+		assertEquals( DB_STORE_ROWS * 2 / 3, findClass( Store.class, "city.country.name", "France" ).size() );
+		assertEquals( DB_STORE_ROWS / 3, findClass( Store.class, "city.country.continent.name", "Asia" ).size() );
+	}
+
+	private void assertCompleted(long executionId) throws InterruptedException {
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+		}
+	}
+
+	private <T> List<T> findClass(Class<T> clazz, String key, String value) {
+		EntityManager em = emf.createEntityManager();
+		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+		Query luceneQuery = ftem.getSearchFactory().buildQueryBuilder()
+				.forEntity( clazz ).get()
+				.keyword().onField( key ).matching( value )
+				.createQuery();
+		@SuppressWarnings("unchecked")
+		List<T> result = ftem.createFullTextQuery( luceneQuery ).getResultList();
+		em.close();
+		return result;
+	}
+
+	@After
+	public void shutdownJPA() {
+		emf.close();
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.StepExecution;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.apache.lucene.search.Query;
+import org.hibernate.SessionFactory;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.hibernate.search.jsr352.massindexing.test.entity.City;
+import org.hibernate.search.jsr352.massindexing.test.entity.Continent;
+import org.hibernate.search.jsr352.massindexing.test.entity.Country;
+import org.hibernate.search.jsr352.massindexing.test.entity.Store;
+import org.hibernate.search.jsr352.test.util.JobFactory;
+import org.hibernate.search.jsr352.test.util.JobTestUtil;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Integration test of the reference entities, cached before the job starts and shared by all the partitions.
+ *
+ * @author Mincong Huang
+ */
+public class ReferenceEntityIT {
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+
+	private static final int JOB_TIMEOUT_MS = 10_000;
+
+	private static final int DB_STORE_ROWS = 60;
+
+	private JobOperator jobOperator;
+	private EntityManagerFactory emf;
+
+	@Before
+	public void setup() {
+		jobOperator = JobFactory.getJobOperator();
+		emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME );
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		Continent europe = new Continent( "Europe" );
+		Continent asia = new Continent( "Asia" );
+		Country france = new Country( "France", europe );
+		Country china = new Country( "China", asia );
+		City[] cities = new City[]{
+				new City( "Paris", france ),
+				new City( "Lyon", france ),
+				new City( "Beijing", china ) };
+		em.persist( europe );
+		em.persist( asia );
+		em.persist( france );
+		em.persist( china );
+		for ( City city : cities ) {
+			em.persist( city );
+		}
+		for ( int i = 0; i < DB_STORE_ROWS; i++ ) {
+			em.persist( new Store( "Store" + i, cities[i % 3] ) );
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	/**
+	 * The documents embed the associations two levels below the cached reference entities, initialized before the
+	 * cache is shared: {@code city.country.continent}.
+	 */
+	@Test
+	public void testReferenceEntities_nestedEmbedded() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntity( Store.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.referenceEntities( City.class )
+				.checkpointFreq( 10 )
+				.rowsPerPartition( 20 )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+		}
+
+		assertEquals( DB_STORE_ROWS / 3, findClass( Store.class, "city.name", "Paris" ).size() );
+		assertEquals( DB_STORE_ROWS * 2 / 3, findClass( Store.class, "city.country.name", "France" ).size() );
+		assertEquals( DB_STORE_ROWS * 2 / 3, findClass( Store.class, "city.country.continent.name", "Europe" ).size() );
+		assertEquals( DB_STORE_ROWS / 3, findClass( Store.class, "city.country.continent.name", "Asia" ).size() );
+	}
+
+	/**
+	 * The embedded associations of each page are initialized in batch, and the proxies of the cached reference
+	 * entities are taken from the cache: the reference entities are only loaded from the database once, when the cache
+	 * is built.
+	 */
+	@Test
+	public void testReferenceEntities_batchInitializeEmbedded() throws InterruptedException, IOException {
+		Statistics statistics = emf.unwrap( SessionFactory.class ).getStatistics();
+		statistics.setStatisticsEnabled( true );
+		statistics.clear();
+		try {
+			long executionId = BatchIndexingJob.forEntity( Store.class )
+					.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+					.underJavaSE( jobOperator )
+					.referenceEntities( City.class )
+					.loadEntitiesByIds( true )
+					.batchInitializeEmbedded( true )
+					.pageSize( 10 )
+					.checkpointFreq( 10 )
+					.rowsPerPartition( 20 )
+					.start();
+			JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+			jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+			for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+				assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+			}
+
+			// 3 cities, 2 countries and 2 continents, loaded by the cache only
+			assertEquals( 3, statistics.getEntityStatistics( City.class.getName() ).getLoadCount() );
+			assertEquals( 2, statistics.getEntityStatistics( Country.class.getName() ).getLoadCount() );
+			assertEquals( 2, statistics.getEntityStatistics( Continent.class.getName() ).getLoadCount() );
+		}
+		finally {
+			statistics.setStatisticsEnabled( false );
+		}
+
+		assertEquals( DB_STORE_ROWS / 3, findClass( Store.class, "city.name", "Paris" ).size() );
+		assertEquals( DB_STORE_ROWS * 2 / 3, findClass( Store.class, "city.country.continent.name", "Europe" ).size() );
+	}
+
+	/**
+	 * The cache size bounds all the reference entity types together: the 2 continents fill half of the cache, so the 3
+	 * cities do not fit anymore, and they are loaded by the partitions.
+	 */
+	@Test
+	public void testReferenceEntities_cacheSizeForAllTypes() throws InterruptedException, IOException {
+		Statistics statistics = emf.unwrap( SessionFactory.class ).getStatistics();
+		statistics.setStatisticsEnabled( true );
+		statistics.clear();
+		try {
+			long executionId = BatchIndexingJob.forEntity( Store.class )
+					.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+					.underJavaSE( jobOperator )
+					.referenceEntities( Continent.class, City.class )
+					.referenceCacheSize( 4 )
+					.checkpointFreq( 10 )
+					.rowsPerPartition( 20 )
+					.start();
+			JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+			jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+			for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+				assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+			}
+
+			// the cities are not loaded by the cache, so each partition loads them
+			assertTrue( statistics.getEntityStatistics( City.class.getName() ).getLoadCount() > 3 );
+		}
+		finally {
+			statistics.setStatisticsEnabled( false );
+		}
+
+		assertEquals( DB_STORE_ROWS / 3, findClass( Store.class, "city.name", "Paris" ).size() );
+	}
+
+	private <T> List<T> findClass(Class<T> clazz, String key, String value) {
+		EntityManager em = emf.createEntityManager();
+		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+		Query luceneQuery = ftem.getSearchFactory().buildQueryBuilder()
+				.forEntity( clazz ).get()
+				.keyword().onField( key ).matching( value )
+				.createQuery();
+		@SuppressWarnings("unchecked")
+		List<T> result = ftem.createFullTextQuery( luceneQuery ).getResultList();
+		em.close();
+		return result;
+	}
+
+	@After
+	public void shutdownJPA() {
+		emf.close();
+	}
+}
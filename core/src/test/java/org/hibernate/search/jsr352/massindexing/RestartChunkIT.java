@@ -135,6 +135,40 @@ public class RestartChunkIT {
 		assertEquals( DB_PERS_ROWS / 5, people.size() );
 	}
 
+	/**
+	 * Restart the job when the flush is deferred to every 4 chunks: the chunks written after the last flush are not
+	 * checkpointed, so they are read and written again by the restarted job, without duplicating their documents.
+	 */
+	@Test
+	public void testJob_deferredFlush() throws InterruptedException, IOException {
+
+		long execId1 = BatchIndexingJob.forEntities( Company.class, Person.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.checkpointFreq( 10 )
+				.chunksPerFlush( 4 )
+				.start();
+		JobExecution jobExec1 = jobOperator.getJobExecution( execId1 );
+		jobExec1 = JobTestUtil.waitForTermination( jobOperator, jobExec1, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExec : jobOperator.getStepExecutions( execId1 ) ) {
+			if ( stepExec.getStepName().equals( "produceLuceneDoc" ) ) {
+				assertEquals( BatchStatus.FAILED, stepExec.getBatchStatus() );
+			}
+		}
+
+		long execId2 = BatchIndexingJob.restart( execId1, jobOperator );
+		JobExecution jobExec2 = jobOperator.getJobExecution( execId2 );
+		jobExec2 = JobTestUtil.waitForTermination( jobOperator, jobExec2, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExec : jobOperator.getStepExecutions( execId2 ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExec.getBatchStatus() );
+		}
+
+		List<Company> companies = findClasses( Company.class, "name", "google" );
+		List<Person> people = findClasses( Person.class, "firstName", "Sundar" );
+		assertEquals( DB_COMP_ROWS / 5, companies.size() );
+		assertEquals( DB_PERS_ROWS / 5, people.size() );
+	}
+
 	private <T> List<T> findClasses(Class<T> clazz, String key, String value) {
 		EntityManager em = emf.createEntityManager();
 		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
@@ -0,0 +1,235 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.StepExecution;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.hibernate.search.jsr352.massindexing.impl.steps.lucene.StepProgress;
+import org.hibernate.search.jsr352.massindexing.impl.steps.lucene.StepProgressFile;
+import org.hibernate.search.jsr352.massindexing.impl.util.PartitionBound;
+import org.hibernate.search.jsr352.massindexing.test.entity.Company;
+import org.hibernate.search.jsr352.test.util.JobFactory;
+import org.hibernate.search.jsr352.test.util.JobTestUtil;
+import org.jboss.byteman.contrib.bmunit.BMRule;
+import org.jboss.byteman.contrib.bmunit.BMRules;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Integration tests of the restart of a job killed in the middle of step {@code produceLuceneDoc}. A killed job does
+ * not persist the step-level user data, which is simulated by ignoring the step progress given to the step context,
+ * and by skipping the step listener ending the step, until the job is restarted.
+ *
+ * @author Mincong Huang
+ */
+@RunWith(org.jboss.byteman.contrib.bmunit.BMUnitRunner.class)
+@BMRules(rules = {
+		@BMRule(
+				name = "Clear the restart flag when a job starts",
+				targetClass = "^javax.batch.operations.JobOperator",
+				targetMethod = "start",
+				targetLocation = "AT ENTRY",
+				action = "clear(\"restarted\")"
+		),
+		@BMRule(
+				name = "Flag the restart of the job",
+				targetClass = "^javax.batch.operations.JobOperator",
+				targetMethod = "restart",
+				targetLocation = "AT ENTRY",
+				action = "flag(\"restarted\")"
+		),
+		@BMRule(
+				name = "Do not persist the step progress until the restart",
+				targetClass = "^javax.batch.runtime.context.StepContext",
+				targetMethod = "setPersistentUserData",
+				targetLocation = "AT ENTRY",
+				condition = "!flagged(\"restarted\") && $1 instanceof "
+						+ "org.hibernate.search.jsr352.massindexing.impl.steps.lucene.StepProgress",
+				action = "return"
+		),
+		@BMRule(
+				name = "Do not end the step until the restart",
+				targetClass = "org.hibernate.search.jsr352.massindexing.impl.steps.lucene.StepProgressSetupListener",
+				targetMethod = "afterStep",
+				targetLocation = "AT ENTRY",
+				condition = "!flagged(\"restarted\")",
+				action = "return"
+		)
+})
+public class RestartCrashIT {
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+
+	private static final int JOB_TIMEOUT_MS = 10_000;
+
+	private static final int DB_COMP_ROWS = 100;
+
+	private JobOperator jobOperator;
+	private EntityManagerFactory emf;
+
+	@Before
+	public void setup() {
+		jobOperator = JobFactory.getJobOperator();
+		emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME );
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		for ( int i = 0; i < DB_COMP_ROWS; i++ ) {
+			em.persist( new Company( "Company" + i ) );
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	/**
+	 * The job is killed right after the partition mapping. The restarted job reuses the partition bounds of the killed
+	 * execution, although it is restarted with another number of rows per partition.
+	 */
+	@Test
+	@BMRule(
+			name = "Kill the job after the partition mapping",
+			targetClass = "org.hibernate.search.jsr352.massindexing.impl.steps.lucene.PartitionMapper",
+			targetMethod = "mapPartitions",
+			targetLocation = "AT EXIT",
+			condition = "!flagged(\"restarted\")",
+			action = "throw new java.lang.IllegalStateException(\"Job is killed by Byteman.\")"
+	)
+	public void testRestart_killedAfterMapping() throws Exception {
+		long execId1 = BatchIndexingJob.forEntity( Company.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.checkpointFreq( 10 )
+				.rowsPerPartition( 10 )
+				.start();
+		JobExecution jobExec1 = jobOperator.getJobExecution( execId1 );
+		jobExec1 = JobTestUtil.waitForTermination( jobOperator, jobExec1, JOB_TIMEOUT_MS );
+		assertEquals( BatchStatus.FAILED, jobExec1.getBatchStatus() );
+		StepProgress killedProgress = StepProgressFile.read( jobOperator.getJobInstance( execId1 ).getInstanceId() );
+		assertNotNull( killedProgress );
+		List<String> killedBounds = toStrings( killedProgress.getPartitionBounds() );
+		assertEquals( DB_COMP_ROWS / 10, killedBounds.size() );
+
+		// a new mapping would build 2 partitions
+		Properties parameters = jobOperator.getParameters( execId1 );
+		parameters.setProperty( "rowsPerPartition", String.valueOf( 50 ) );
+		long execId2 = jobOperator.restart( execId1, parameters );
+		JobExecution jobExec2 = jobOperator.getJobExecution( execId2 );
+		jobExec2 = JobTestUtil.waitForTermination( jobOperator, jobExec2, JOB_TIMEOUT_MS );
+		StepProgress restartedProgress = null;
+		for ( StepExecution stepExec : jobOperator.getStepExecutions( execId2 ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExec.getBatchStatus() );
+			if ( stepExec.getStepName().equals( "produceLuceneDoc" ) ) {
+				restartedProgress = (StepProgress) stepExec.getPersistentUserData();
+			}
+		}
+		assertNotNull( restartedProgress );
+		assertEquals( killedBounds, toStrings( restartedProgress.getPartitionBounds() ) );
+		assertEquals( DB_COMP_ROWS, countDocuments( Company.class ) );
+	}
+
+	/**
+	 * The job is killed while the partitions run, once some of them are completed. The partitions completed are
+	 * recorded in the copy of the step progress, so the restarted job skips them instead of indexing them again, and
+	 * the chunks of the other partitions, whose flushes are deferred, are not indexed twice.
+	 */
+	@Test
+	@BMRules(rules = {
+			@BMRule(
+					name = "Create count-down after the partition mapping",
+					targetClass = "org.hibernate.search.jsr352.massindexing.impl.steps.lucene.PartitionMapper",
+					targetMethod = "mapPartitions",
+					targetLocation = "AT EXIT",
+					condition = "!flagged(\"restarted\")",
+					action = "createCountDown(\"beforeKill\", 36)"
+			),
+			@BMRule(
+					name = "Kill the job in the middle of the fourth partition",
+					targetClass = "org.hibernate.search.jsr352.massindexing.impl.steps.lucene.EntityReader",
+					targetMethod = "readItem",
+					targetLocation = "AT ENTRY",
+					condition = "!flagged(\"restarted\") && countDown(\"beforeKill\")",
+					action = "throw new java.lang.IllegalStateException(\"Job is killed by Byteman.\")"
+			),
+			@BMRule(
+					name = "Fail a completed partition reading the database after the restart",
+					targetClass = "org.hibernate.search.jsr352.massindexing.impl.steps.lucene.EntityReader",
+					targetMethod = "buildScrollUsingCriteria",
+					targetLocation = "AT ENTRY",
+					condition = "flagged(\"restarted\") && $0.jobData.isPartitionCompleted( "
+							+ "java.lang.Integer.parseInt( $0.partitionIdStr ) )",
+					action = "throw new java.lang.IllegalStateException(\"Completed partition is read again.\")"
+			)
+	})
+	public void testRestart_killedAfterCompletedPartitions() throws Exception {
+		// one partition at a time: each one reads 10 entities, then null
+		long execId1 = BatchIndexingJob.forEntity( Company.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.maxThreads( 1 )
+				.checkpointFreq( 5 )
+				.chunksPerFlush( 4 )
+				.rowsPerPartition( 10 )
+				.start();
+		JobExecution jobExec1 = jobOperator.getJobExecution( execId1 );
+		jobExec1 = JobTestUtil.waitForTermination( jobOperator, jobExec1, JOB_TIMEOUT_MS );
+		assertEquals( BatchStatus.FAILED, jobExec1.getBatchStatus() );
+		StepProgress killedProgress = StepProgressFile.read( jobOperator.getJobInstance( execId1 ).getInstanceId() );
+		assertNotNull( killedProgress );
+		Set<Integer> killedCompleted = killedProgress.getCompletedPartitions();
+		assertTrue( killedCompleted.containsAll( Arrays.asList( 0, 1, 2 ) ) );
+		assertFalse( killedCompleted.contains( 3 ) );
+
+		long execId2 = jobOperator.restart( execId1, jobOperator.getParameters( execId1 ) );
+		JobExecution jobExec2 = jobOperator.getJobExecution( execId2 );
+		jobExec2 = JobTestUtil.waitForTermination( jobOperator, jobExec2, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExec : jobOperator.getStepExecutions( execId2 ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExec.getBatchStatus() );
+		}
+		assertEquals( DB_COMP_ROWS, countDocuments( Company.class ) );
+	}
+
+	private static List<String> toStrings(List<PartitionBound> partitionBounds) {
+		return partitionBounds.stream()
+				.map( PartitionBound::toString )
+				.collect( Collectors.toList() );
+	}
+
+	private int countDocuments(Class<?> clazz) {
+		EntityManager em = emf.createEntityManager();
+		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+		int count = ftem.createFullTextQuery( new MatchAllDocsQuery(), clazz ).getResultSize();
+		em.close();
+		return count;
+	}
+
+	@After
+	public void shutdownJPA() {
+		emf.close();
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.StepExecution;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.apache.lucene.index.IndexReader;
+import org.hibernate.search.indexes.IndexReaderAccessor;
+import org.hibernate.search.indexes.spi.IndexManager;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.hibernate.search.jsr352.massindexing.test.entity.Company;
+import org.hibernate.search.jsr352.test.util.JobFactory;
+import org.hibernate.search.jsr352.test.util.JobTestUtil;
+import org.hibernate.search.spi.SearchIntegrator;
+import org.jboss.byteman.contrib.bmunit.BMRule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Integration tests of the indexing of a sharded entity type, whose shards are written concurrently by the item
+ * writer.
+ *
+ * @author Mincong Huang
+ */
+@RunWith(org.jboss.byteman.contrib.bmunit.BMUnitRunner.class)
+public class ShardingIT {
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+
+	private static final int JOB_TIMEOUT_MS = 10_000;
+
+	private static final int DB_COMP_ROWS = 100;
+	private static final int SHARDS = 2;
+
+	private JobOperator jobOperator;
+	private EntityManagerFactory emf;
+
+	@Before
+	public void setup() {
+		Map<String, String> properties = new HashMap<>();
+		properties.put( "hibernate.search." + Company.class.getName() + ".sharding_strategy.nbr_of_shards",
+				String.valueOf( SHARDS ) );
+
+		jobOperator = JobFactory.getJobOperator();
+		emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME, properties );
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		for ( int i = 0; i < DB_COMP_ROWS; i++ ) {
+			em.persist( new Company( "Company" + i ) );
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	/**
+	 * Each shard receives the documents chosen by the sharding strategy.
+	 */
+	@Test
+	public void testSharding() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntity( Company.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.checkpointFreq( 10 )
+				.rowsPerPartition( 50 )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+		}
+
+		EntityManager em = emf.createEntityManager();
+		try {
+			FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+			IndexManager[] indexManagers = ftem.getSearchFactory()
+					.unwrap( SearchIntegrator.class )
+					.getIndexBinding( Company.class )
+					.getIndexManagers();
+			assertEquals( SHARDS, indexManagers.length );
+			IndexReaderAccessor readerAccessor = ftem.getSearchFactory().getIndexReaderAccessor();
+			int documents = 0;
+			for ( IndexManager indexManager : indexManagers ) {
+				IndexReader reader = readerAccessor.open( indexManager.getIndexName() );
+				try {
+					assertTrue( indexManager.getIndexName() + " is empty", reader.numDocs() > 0 );
+					documents += reader.numDocs();
+				}
+				finally {
+					readerAccessor.close( reader );
+				}
+			}
+			assertEquals( DB_COMP_ROWS, documents );
+		}
+		finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * A failure of the writer thread of one shard fails the step.
+	 */
+	@Test
+	@BMRule(
+			name = "Fail the works of the second shard",
+			targetClass = "org.hibernate.search.indexes.spi.DirectoryBasedIndexManager",
+			targetMethod = "performOperations",
+			targetLocation = "AT ENTRY",
+			condition = "$0.getIndexName().endsWith(\".1\")",
+			action = "throw new java.lang.IllegalStateException(\"Shard write is failed by Byteman.\")"
+	)
+	public void testSharding_shardFailure() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntity( Company.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.checkpointFreq( 10 )
+				.rowsPerPartition( 50 )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		assertEquals( BatchStatus.FAILED, jobExecution.getBatchStatus() );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			if ( stepExecution.getStepName().equals( "produceLuceneDoc" ) ) {
+				assertEquals( BatchStatus.FAILED, stepExecution.getBatchStatus() );
+			}
+		}
+	}
+
+	@After
+	public void shutdownJPA() {
+		emf.close();
+	}
+}
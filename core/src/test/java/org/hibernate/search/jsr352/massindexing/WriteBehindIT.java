@@ -0,0 +1,129 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.StepExecution;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.hibernate.search.jsr352.massindexing.test.entity.Company;
+import org.hibernate.search.jsr352.massindexing.test.entity.Person;
+import org.hibernate.search.jsr352.test.util.JobFactory;
+import org.hibernate.search.jsr352.test.util.JobTestUtil;
+import org.jboss.byteman.contrib.bmunit.BMRule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Integration tests of the write-behind, where the chunks are written by a dedicated thread of each partition.
+ *
+ * @author Mincong Huang
+ */
+@RunWith(org.jboss.byteman.contrib.bmunit.BMUnitRunner.class)
+public class WriteBehindIT {
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+
+	private static final int JOB_TIMEOUT_MS = 10_000;
+
+	private static final int DB_COMP_ROWS = 100;
+	private static final int DB_PERS_ROWS = 50;
+
+	private JobOperator jobOperator;
+	private EntityManagerFactory emf;
+
+	@Before
+	public void setup() {
+		jobOperator = JobFactory.getJobOperator();
+		emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME );
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		for ( int i = 0; i < DB_COMP_ROWS; i++ ) {
+			em.persist( new Company( "Company" + i ) );
+		}
+		for ( int i = 0; i < DB_PERS_ROWS; i++ ) {
+			String id = String.format( Locale.ROOT, "%2d", i );
+			em.persist( new Person( id, "Person" + i, "" ) );
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	@Test
+	public void testWriteBehind() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntities( Company.class, Person.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.checkpointFreq( 10 )
+				.writeBehindChunks( 2 )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			assertEquals( BatchStatus.COMPLETED, stepExecution.getBatchStatus() );
+		}
+
+		assertEquals( DB_COMP_ROWS, countDocuments( Company.class ) );
+		assertEquals( DB_PERS_ROWS, countDocuments( Person.class ) );
+	}
+
+	/**
+	 * A failure of the write-behind thread fails the step, instead of ending the partitions with missing documents.
+	 */
+	@Test
+	@BMRule(
+			name = "Fail the chunks written by the write-behind thread",
+			targetClass = "org.hibernate.search.jsr352.massindexing.impl.steps.lucene.LuceneDocWriter",
+			targetMethod = "writeChunk",
+			targetLocation = "AT ENTRY",
+			action = "throw new java.io.IOException(\"Write is failed by Byteman.\")"
+	)
+	public void testWriteBehind_failure() throws InterruptedException, IOException {
+		long executionId = BatchIndexingJob.forEntities( Company.class, Person.class )
+				.entityManagerFactoryReference( PERSISTENCE_UNIT_NAME )
+				.underJavaSE( jobOperator )
+				.checkpointFreq( 10 )
+				.writeBehindChunks( 2 )
+				.start();
+		JobExecution jobExecution = jobOperator.getJobExecution( executionId );
+		jobExecution = JobTestUtil.waitForTermination( jobOperator, jobExecution, JOB_TIMEOUT_MS );
+		assertEquals( BatchStatus.FAILED, jobExecution.getBatchStatus() );
+		for ( StepExecution stepExecution : jobOperator.getStepExecutions( executionId ) ) {
+			if ( stepExecution.getStepName().equals( "produceLuceneDoc" ) ) {
+				assertEquals( BatchStatus.FAILED, stepExecution.getBatchStatus() );
+			}
+		}
+	}
+
+	private int countDocuments(Class<?> clazz) {
+		EntityManager em = emf.createEntityManager();
+		FullTextEntityManager ftem = Search.getFullTextEntityManager( em );
+		int count = ftem.createFullTextQuery( new MatchAllDocsQuery(), clazz ).getResultSize();
+		em.close();
+		return count;
+	}
+
+	@After
+	public void shutdownJPA() {
+		emf.close();
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import org.hibernate.search.exception.SearchException;
+import org.junit.Test;
+
+/**
+ * Unit test for the monitor of the works applied by the backend.
+ *
+ * @author Mincong Huang
+ */
+public class AppliedWorkMonitorTest {
+
+	@Test
+	public void testAwaitWorksApplied_appliedByAnotherThread() throws Exception {
+		AppliedWorkMonitor monitor = new AppliedWorkMonitor( 10_000L );
+		monitor.worksSubmitted( 3 );
+		Thread backend = new Thread( () -> {
+			for ( int i = 0; i < 3; i++ ) {
+				monitor.documentsAdded( 1 );
+			}
+		} );
+		backend.start();
+		monitor.awaitWorksApplied();
+		backend.join();
+	}
+
+	@Test(expected = SearchException.class)
+	public void testAwaitWorksApplied_workNeverApplied() throws Exception {
+		AppliedWorkMonitor monitor = new AppliedWorkMonitor( 100L );
+		monitor.worksSubmitted( 2 );
+		monitor.documentsAdded( 1 );
+		monitor.awaitWorksApplied();
+	}
+
+	@Test
+	public void testAwaitWorksApplied_nothingSubmitted() throws Exception {
+		AppliedWorkMonitor monitor = new AppliedWorkMonitor( 100L );
+		// returns at once
+		monitor.awaitWorksApplied();
+	}
+}
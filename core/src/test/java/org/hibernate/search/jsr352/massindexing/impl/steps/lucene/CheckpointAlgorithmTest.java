@@ -0,0 +1,154 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.batch.runtime.context.StepContext;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Unit test for the adaptive chunk size of the checkpoint algorithm.
+ *
+ * @author Mincong Huang
+ */
+public class CheckpointAlgorithmTest {
+
+	private static final int ITEM_COUNT = 10;
+
+	/**
+	 * The maximum chunk size: 10 times the item count.
+	 */
+	private static final int MAX_CHUNK_SIZE = 10 * ITEM_COUNT;
+
+	@Mock
+	private StepContext mockedStepContext;
+
+	@InjectMocks
+	private CheckpointAlgorithm checkpointAlgorithm;
+
+	private PartitionContextData partitionData;
+
+	@Before
+	public void setUp() {
+		partitionData = new PartitionContextData( 0, "entity" );
+	}
+
+	/**
+	 * Prove that the chunks shrink when their documents are larger than the byte volume allows.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testChunkBytes_shrink() throws Exception {
+		initCheckpointAlgorithm( null, "1000" );
+		partitionData.documentBytesWritten( 500 * ITEM_COUNT, ITEM_COUNT );
+
+		assertEquals( ITEM_COUNT, readChunk() );
+		assertEquals( 2, partitionData.getPartitionProgress().getChunkSize() ); // 1000 / 500 = 2 items
+		assertEquals( 2, readChunk() );
+	}
+
+	/**
+	 * Prove that the chunks grow when their documents are smaller than the byte volume allows.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testChunkBytes_grow() throws Exception {
+		initCheckpointAlgorithm( null, "500" );
+		partitionData.documentBytesWritten( 10 * ITEM_COUNT, ITEM_COUNT );
+
+		assertEquals( ITEM_COUNT, readChunk() );
+		assertEquals( 50, partitionData.getPartitionProgress().getChunkSize() ); // 500 / 10 = 50 items
+		assertEquals( 50, readChunk() );
+	}
+
+	/**
+	 * Prove that the chunks never exceed the maximum chunk size, however small the documents are.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testChunkBytes_maxChunkSize() throws Exception {
+		initCheckpointAlgorithm( null, "1000000" );
+		partitionData.documentBytesWritten( ITEM_COUNT, ITEM_COUNT );
+
+		assertEquals( ITEM_COUNT, readChunk() );
+		assertEquals( MAX_CHUNK_SIZE, partitionData.getPartitionProgress().getChunkSize() );
+		assertEquals( MAX_CHUNK_SIZE, readChunk() );
+	}
+
+	/**
+	 * Prove that the chunks grow up to the maximum chunk size when their items are processed much faster than the
+	 * checkpoint interval.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCheckpointInterval_grow() throws Exception {
+		initCheckpointAlgorithm( "60000", null );
+
+		assertEquals( ITEM_COUNT, readChunk() );
+		assertEquals( MAX_CHUNK_SIZE, partitionData.getPartitionProgress().getChunkSize() );
+	}
+
+	/**
+	 * Prove that the chunks shrink when their items are too slow to be processed within the checkpoint interval. The
+	 * checkpoint interval is enforced directly for the first chunk, before its size is tuned.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCheckpointInterval_shrink() throws Exception {
+		initCheckpointAlgorithm( "50", null );
+
+		int items = readChunk( 20 );
+		assertTrue( "Chunk closed after " + items + " items", items < ITEM_COUNT );
+		int chunkSize = partitionData.getPartitionProgress().getChunkSize();
+		assertTrue( "Chunk size set to " + chunkSize, chunkSize < ITEM_COUNT );
+	}
+
+	private void initCheckpointAlgorithm(String checkpointIntervalMillis, String chunkBytes) {
+		checkpointAlgorithm = new CheckpointAlgorithm( String.valueOf( ITEM_COUNT ), checkpointIntervalMillis,
+				chunkBytes );
+		MockitoAnnotations.initMocks( this );
+		Mockito.when( mockedStepContext.getTransientUserData() ).thenReturn( partitionData );
+	}
+
+	private int readChunk() throws Exception {
+		return readChunk( 0 );
+	}
+
+	/**
+	 * Read items until the checkpoint algorithm decides to checkpoint, then end the checkpoint.
+	 *
+	 * @param millisPerItem the time spent processing each item
+	 * @return the number of items of the chunk
+	 */
+	private int readChunk(long millisPerItem) throws Exception {
+		checkpointAlgorithm.beginCheckpoint();
+		int items = 0;
+		boolean ready = false;
+		while ( !ready && items < 10 * MAX_CHUNK_SIZE ) {
+			if ( millisPerItem > 0 ) {
+				Thread.sleep( millisPerItem );
+			}
+			items++;
+			ready = checkpointAlgorithm.isReadyToCheckpoint();
+		}
+		checkpointAlgorithm.endCheckpoint();
+		return items;
+	}
+}
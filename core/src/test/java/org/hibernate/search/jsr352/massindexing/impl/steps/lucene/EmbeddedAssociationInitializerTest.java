@@ -0,0 +1,181 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.search.engine.metadata.impl.TypeMetadata;
+import org.hibernate.search.hcore.util.impl.ContextHelper;
+import org.hibernate.search.jsr352.massindexing.test.entity.Book;
+import org.hibernate.search.jsr352.massindexing.test.entity.City;
+import org.hibernate.search.jsr352.massindexing.test.entity.Continent;
+import org.hibernate.search.jsr352.massindexing.test.entity.Country;
+import org.hibernate.search.jsr352.massindexing.test.entity.Library;
+import org.hibernate.search.jsr352.massindexing.test.entity.Store;
+import org.hibernate.stat.Statistics;
+import org.jboss.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the batch initialization of embedded associations.
+ *
+ * @author Mincong Huang
+ */
+public class EmbeddedAssociationInitializerTest {
+
+	private static final Logger LOGGER = Logger.getLogger( EmbeddedAssociationInitializerTest.class );
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+	private static final int LIBRARY_ROWS = 3;
+	private static final int BOOKS_PER_LIBRARY = 2;
+
+	private EntityManagerFactory emf;
+
+	@Before
+	public void setUp() {
+		EntityManager em = null;
+		try {
+			emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME );
+			em = emf.createEntityManager();
+			em.getTransaction().begin();
+			for ( int i = 1; i <= LIBRARY_ROWS; i++ ) {
+				Library library = new Library( "L" + i );
+				em.persist( library );
+				for ( int j = 1; j <= BOOKS_PER_LIBRARY; j++ ) {
+					em.persist( new Book( "B" + i + "-" + j, library ) );
+				}
+			}
+			em.getTransaction().commit();
+		}
+		finally {
+			try {
+				em.close();
+			}
+			catch (Exception e) {
+				LOGGER.error( e );
+			}
+		}
+	}
+
+	@After
+	public void shutDown() {
+		if ( emf.isOpen() ) {
+			emf.close();
+		}
+	}
+
+	/**
+	 * Prove that the embedded collections of a page of entities are initialized with a single query, even if the
+	 * collection key is not the ID of the owner but another property referenced by the key column.
+	 */
+	@Test
+	public void testInitialize_collectionKeyNotId() {
+		SessionFactory sessionFactory = emf.unwrap( SessionFactory.class );
+		Statistics statistics = sessionFactory.getStatistics();
+		Session session = sessionFactory.openSession();
+		try {
+			@SuppressWarnings("unchecked")
+			List<Library> libraries = session.createCriteria( Library.class )
+					.addOrder( Order.asc( "id" ) )
+					.list();
+			TypeMetadata typeMetadata = ContextHelper.getSearchIntegrator( session )
+					.getIndexBindings()
+					.get( Library.class )
+					.getDocumentBuilder()
+					.getTypeMetadata();
+
+			statistics.setStatisticsEnabled( true );
+			statistics.clear();
+			long lazyLoadsAvoided = new EmbeddedAssociationInitializer( session )
+					.initialize( libraries, typeMetadata );
+			for ( Library library : libraries ) {
+				assertTrue( Hibernate.isInitialized( library.getBooks() ) );
+				assertEquals( BOOKS_PER_LIBRARY, library.getBooks().size() );
+			}
+
+			assertEquals( 1, statistics.getPrepareStatementCount() );
+			assertEquals( LIBRARY_ROWS - 1, lazyLoadsAvoided ); // 3 collections initialized by 1 query
+		}
+		finally {
+			statistics.setStatisticsEnabled( false );
+			session.close();
+		}
+	}
+
+	/**
+	 * Prove that a to-one proxy shared by several owners is loaded and counted once: the 3 stores share 2 city
+	 * proxies, which share 1 country proxy, which has 1 continent proxy. 4 proxies are initialized by 3 queries.
+	 */
+	@Test
+	public void testInitialize_sharedProxy() {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			Continent europe = new Continent( "Europe" );
+			Country france = new Country( "France", europe );
+			City paris = new City( "Paris", france );
+			City lyon = new City( "Lyon", france );
+			em.persist( europe );
+			em.persist( france );
+			em.persist( paris );
+			em.persist( lyon );
+			em.persist( new Store( "S1", paris ) );
+			em.persist( new Store( "S2", paris ) );
+			em.persist( new Store( "S3", lyon ) );
+			em.getTransaction().commit();
+		}
+		finally {
+			em.close();
+		}
+
+		SessionFactory sessionFactory = emf.unwrap( SessionFactory.class );
+		Statistics statistics = sessionFactory.getStatistics();
+		Session session = sessionFactory.openSession();
+		try {
+			@SuppressWarnings("unchecked")
+			List<Store> stores = session.createCriteria( Store.class )
+					.addOrder( Order.asc( "id" ) )
+					.list();
+			TypeMetadata typeMetadata = ContextHelper.getSearchIntegrator( session )
+					.getIndexBindings()
+					.get( Store.class )
+					.getDocumentBuilder()
+					.getTypeMetadata();
+
+			statistics.setStatisticsEnabled( true );
+			statistics.clear();
+			long lazyLoadsAvoided = new EmbeddedAssociationInitializer( session )
+					.initialize( stores, typeMetadata );
+			for ( Store store : stores ) {
+				assertTrue( Hibernate.isInitialized( store.getCity() ) );
+				assertTrue( Hibernate.isInitialized( store.getCity().getCountry() ) );
+				assertTrue( Hibernate.isInitialized( store.getCity().getCountry().getContinent() ) );
+			}
+
+			assertEquals( 3, statistics.getPrepareStatementCount() );
+			assertEquals( 0, statistics.getEntityFetchCount() );
+			assertEquals( 1, lazyLoadsAvoided ); // 4 proxies initialized by 3 queries
+		}
+		finally {
+			statistics.setStatisticsEnabled( false );
+			session.close();
+		}
+	}
+}
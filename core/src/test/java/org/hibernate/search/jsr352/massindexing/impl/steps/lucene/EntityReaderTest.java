@@ -8,8 +8,10 @@ package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 
 import javax.batch.runtime.context.JobContext;
@@ -18,13 +20,23 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
 import org.hibernate.search.jsr352.massindexing.impl.JobContextData;
 import org.hibernate.search.jsr352.massindexing.impl.steps.lucene.EntityReader;
+import org.hibernate.search.jsr352.massindexing.impl.util.IdRangeQueue;
 import org.hibernate.search.jsr352.massindexing.impl.util.PartitionBound;
+import org.hibernate.search.jsr352.massindexing.test.entity.City;
 import org.hibernate.search.jsr352.massindexing.test.entity.Company;
+import org.hibernate.search.jsr352.massindexing.test.entity.Continent;
+import org.hibernate.search.jsr352.massindexing.test.entity.Country;
+import org.hibernate.search.jsr352.massindexing.test.entity.Store;
+import org.hibernate.stat.Statistics;
 import org.jboss.logging.Logger;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -81,17 +93,26 @@ public class EntityReaderTest {
 		final String fetchSize = String.valueOf( 1000 );
 		final String hql = null;
 		final String maxResults = String.valueOf( Integer.MAX_VALUE );
+		final String pageSize = String.valueOf( 0 );
 		final String partitionId = String.valueOf( 0 );
 		entityReader = new EntityReader( cacheable,
 				entityName,
 				fetchSize,
 				hql,
 				maxResults,
+				pageSize,
 				partitionId );
 
 		MockitoAnnotations.initMocks( this );
 	}
 
+	@After
+	public void shutDown() {
+		if ( emf.isOpen() ) {
+			emf.close();
+		}
+	}
+
 	@Test
 	public void testReadItem_withoutBoundary() throws Exception {
 
@@ -112,10 +133,299 @@ public class EntityReaderTest {
 
 		entityReader.open( null );
 		for ( int i = 0; i < COMPANIES.length; i++ ) {
-			Company c = (Company) entityReader.readItem();
+			EntityItem item = (EntityItem) entityReader.readItem();
+			Company c = (Company) item.getEntity();
+			assertEquals( c.getId(), item.getId() );
+			assertEquals( COMPANIES[i].getName(), c.getName() );
+		}
+		// no more item
+		assertNull( entityReader.readItem() );
+	}
+
+	/**
+	 * Prove that the keyset pagination reads all the entities in ID order, even if the page size is smaller than the
+	 * number of entities to read.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadItem_keysetPagination() throws Exception {
+
+		entityReader = new EntityReader( String.valueOf( false ),
+				Company.class.getName(),
+				String.valueOf( 1000 ),
+				null,
+				String.valueOf( Integer.MAX_VALUE ),
+				String.valueOf( 2 ),
+				String.valueOf( 0 ) );
+		MockitoAnnotations.initMocks( this );
+
+		// mock job context
+		JobContextData jobData = new JobContextData();
+		jobData.setEntityManagerFactory( emf );
+		jobData.setCriteria( new HashSet<>() );
+		jobData.setEntityTypes( Company.class );
+		jobData.setPartitionBounds( Arrays.asList( new PartitionBound( Company.class, null, null ) ) );
+		Mockito.when( mockedJobContext.getTransientUserData() ).thenReturn( jobData );
+
+		// mock step context
+		Mockito.doNothing().when( mockedStepContext ).setTransientUserData( Mockito.any() );
+
+		entityReader.open( null );
+		for ( int i = 0; i < COMPANIES.length; i++ ) {
+			EntityItem item = (EntityItem) entityReader.readItem();
+			Company c = (Company) item.getEntity();
+			assertEquals( c.getId(), item.getId() );
 			assertEquals( COMPANIES[i].getName(), c.getName() );
 		}
 		// no more item
 		assertNull( entityReader.readItem() );
 	}
+
+	/**
+	 * Prove that the checkpoints in the middle of a keyset page keep the rest of the page attached to the session,
+	 * instead of fetching it again.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadItem_chunkSmallerThanPage() throws Exception {
+
+		entityReader = new EntityReader( String.valueOf( false ),
+				Company.class.getName(),
+				String.valueOf( 1000 ),
+				null,
+				String.valueOf( Integer.MAX_VALUE ),
+				String.valueOf( COMPANIES.length ),
+				String.valueOf( 0 ) );
+		MockitoAnnotations.initMocks( this );
+
+		// mock job context
+		JobContextData jobData = new JobContextData();
+		jobData.setEntityManagerFactory( emf );
+		jobData.setCriteria( new HashSet<>() );
+		jobData.setEntityTypes( Company.class );
+		jobData.setPartitionBounds( Arrays.asList( new PartitionBound( Company.class, null, null ) ) );
+		Mockito.when( mockedJobContext.getTransientUserData() ).thenReturn( jobData );
+
+		// mock step context
+		ArgumentCaptor<PartitionContextData> partitionDataCaptor = ArgumentCaptor.forClass( PartitionContextData.class );
+		Mockito.doNothing().when( mockedStepContext ).setTransientUserData( partitionDataCaptor.capture() );
+
+		Statistics statistics = emf.unwrap( SessionFactory.class ).getStatistics();
+		entityReader.open( null );
+		PartitionContextData partitionData = partitionDataCaptor.getValue();
+		Mockito.when( mockedStepContext.getTransientUserData() ).thenReturn( partitionData );
+		try {
+			statistics.setStatisticsEnabled( true );
+			statistics.clear();
+			for ( int i = 0; i < COMPANIES.length; i++ ) {
+				EntityItem item = (EntityItem) entityReader.readItem();
+				Company c = (Company) item.getEntity();
+				assertTrue( partitionData.getSession().contains( c ) );
+				assertEquals( COMPANIES[i].getName(), c.getName() );
+				// one item per chunk
+				entityReader.checkpointInfo();
+			}
+			// no more item
+			assertNull( entityReader.readItem() );
+			// the page of the 3 companies, then an empty page
+			assertEquals( 2, statistics.getPrepareStatementCount() );
+		}
+		finally {
+			statistics.setStatisticsEnabled( false );
+		}
+	}
+
+	/**
+	 * Prove that the entities loaded by IDs are loaded with a single query per keyset page, which fetches their
+	 * embedded to-one associations with a join: {@code city}, {@code city.country} and
+	 * {@code city.country.continent}.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadItem_loadEntitiesByIds() throws Exception {
+		final int storeRows = 5;
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		Continent europe = new Continent( "Europe" );
+		Country france = new Country( "France", europe );
+		City paris = new City( "Paris", france );
+		em.persist( europe );
+		em.persist( france );
+		em.persist( paris );
+		for ( int i = 0; i < storeRows; i++ ) {
+			em.persist( new Store( "Store" + i, paris ) );
+		}
+		em.getTransaction().commit();
+		em.close();
+
+		entityReader = new EntityReader( String.valueOf( false ),
+				Store.class.getName(),
+				String.valueOf( 1000 ),
+				String.valueOf( Integer.MAX_VALUE ),
+				String.valueOf( 2 ),
+				String.valueOf( 0 ),
+				String.valueOf( true ) );
+		MockitoAnnotations.initMocks( this );
+
+		// mock job context
+		JobContextData jobData = new JobContextData();
+		jobData.setEntityManagerFactory( emf );
+		jobData.setCriteria( new HashSet<>() );
+		jobData.setEntityTypes( Store.class );
+		jobData.setPartitionBounds( Arrays.asList( new PartitionBound( Store.class, null, null ) ) );
+		Mockito.when( mockedJobContext.getTransientUserData() ).thenReturn( jobData );
+
+		// mock step context
+		Mockito.doNothing().when( mockedStepContext ).setTransientUserData( Mockito.any() );
+
+		Statistics statistics = emf.unwrap( SessionFactory.class ).getStatistics();
+		entityReader.open( null );
+		try {
+			statistics.setStatisticsEnabled( true );
+			statistics.clear();
+			for ( int i = 0; i < storeRows; i++ ) {
+				EntityItem item = (EntityItem) entityReader.readItem();
+				Store store = (Store) item.getEntity();
+				assertEquals( store.getId(), item.getId() );
+				assertEquals( "Store" + i, store.getName() );
+				assertTrue( Hibernate.isInitialized( store.getCity() ) );
+				assertTrue( Hibernate.isInitialized( store.getCity().getCountry() ) );
+				assertTrue( Hibernate.isInitialized( store.getCity().getCountry().getContinent() ) );
+				assertEquals( "Europe", store.getCity().getCountry().getContinent().getName() );
+			}
+			// no more item
+			assertNull( entityReader.readItem() );
+			// 3 pages of IDs (2, 2 and 1 IDs), and 1 query loading the entities of each page
+			assertEquals( 6, statistics.getPrepareStatementCount() );
+			// no lazy load of the embedded associations
+			assertEquals( 0, statistics.getEntityFetchCount() );
+		}
+		finally {
+			statistics.setStatisticsEnabled( false );
+		}
+	}
+
+	/**
+	 * Prove that a partition completed by a previous execution is skipped: nothing is read, and the partition is
+	 * reported as completed again.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadItem_completedPartition() throws Exception {
+
+		// mock job context
+		JobContextData jobData = new JobContextData();
+		jobData.setEntityManagerFactory( emf );
+		jobData.setCriteria( new HashSet<>() );
+		jobData.setEntityTypes( Company.class );
+		jobData.setPartitionBounds( Arrays.asList( new PartitionBound( Company.class, null, null ) ) );
+		jobData.setCompletedPartitions( Collections.singleton( 0 ) );
+		Mockito.when( mockedJobContext.getTransientUserData() ).thenReturn( jobData );
+
+		// mock step context
+		ArgumentCaptor<PartitionContextData> partitionDataCaptor = ArgumentCaptor.forClass( PartitionContextData.class );
+		Mockito.doNothing().when( mockedStepContext ).setTransientUserData( partitionDataCaptor.capture() );
+
+		entityReader.open( null );
+		assertNull( entityReader.readItem() );
+		assertTrue( partitionDataCaptor.getValue().getPartitionProgress().isCompleted() );
+	}
+
+	/**
+	 * Prove that a partition completed before a crash is skipped, even if the step progress of the crashed execution
+	 * does not tell it: the partition data saved at its last checkpoint tells it, and no session is opened.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadItem_partitionCompletedBeforeCrash() throws Exception {
+
+		// mock job context, without any partition completed
+		JobContextData jobData = new JobContextData();
+		jobData.setEntityManagerFactory( emf );
+		jobData.setCriteria( new HashSet<>() );
+		jobData.setEntityTypes( Company.class );
+		jobData.setPartitionBounds( Arrays.asList( new PartitionBound( Company.class, null, null ) ) );
+		Mockito.when( mockedJobContext.getTransientUserData() ).thenReturn( jobData );
+
+		// mock step context, with the partition data saved at the last checkpoint
+		PartitionContextData previousData = new PartitionContextData( 0, Company.class.getName() );
+		previousData.getPartitionProgress().setCompleted( true );
+		Mockito.when( mockedStepContext.getPersistentUserData() ).thenReturn( previousData );
+		ArgumentCaptor<PartitionContextData> partitionDataCaptor = ArgumentCaptor.forClass( PartitionContextData.class );
+		Mockito.doNothing().when( mockedStepContext ).setTransientUserData( partitionDataCaptor.capture() );
+
+		Statistics statistics = emf.unwrap( SessionFactory.class ).getStatistics();
+		try {
+			statistics.setStatisticsEnabled( true );
+			statistics.clear();
+			entityReader.open( 5 );
+			assertNull( entityReader.readItem() );
+			assertTrue( partitionDataCaptor.getValue().getPartitionProgress().isCompleted() );
+			assertEquals( 0, statistics.getSessionOpenCount() );
+			assertEquals( 0, statistics.getPrepareStatementCount() );
+		}
+		finally {
+			statistics.setStatisticsEnabled( false );
+		}
+	}
+
+	/**
+	 * Prove that the maximum number of results applies to the whole partition when it steals several ID ranges, with
+	 * both the scroll and the keyset pagination: the ranges left once the limit is reached are not claimed.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadItem_maxResultsWithWorkStealing() throws Exception {
+		assertMaxResultsWithWorkStealing( String.valueOf( 0 ) );
+		assertMaxResultsWithWorkStealing( String.valueOf( 1 ) );
+	}
+
+	private void assertMaxResultsWithWorkStealing(String pageSize) throws Exception {
+		final int maxResults = 2;
+		entityReader = new EntityReader( String.valueOf( false ),
+				Company.class.getName(),
+				String.valueOf( 1000 ),
+				null,
+				String.valueOf( maxResults ),
+				pageSize,
+				String.valueOf( 0 ),
+				String.valueOf( true ) );
+		MockitoAnnotations.initMocks( this );
+
+		// one range per company
+		IdRangeQueue rangeQueue = new IdRangeQueue( Arrays.asList(
+				new PartitionBound( Company.class, null, COMPANIES[1].getId() ),
+				new PartitionBound( Company.class, COMPANIES[1].getId(), COMPANIES[2].getId() ),
+				new PartitionBound( Company.class, COMPANIES[2].getId(), null ) ),
+				Collections.emptySet() );
+
+		// mock job context
+		JobContextData jobData = new JobContextData();
+		jobData.setEntityManagerFactory( emf );
+		jobData.setCriteria( new HashSet<>() );
+		jobData.setEntityTypes( Company.class );
+		jobData.setRangeQueue( rangeQueue );
+		Mockito.when( mockedJobContext.getTransientUserData() ).thenReturn( jobData );
+
+		// mock step context
+		Mockito.doNothing().when( mockedStepContext ).setTransientUserData( Mockito.any() );
+
+		entityReader.open( null );
+		for ( int i = 0; i < maxResults; i++ ) {
+			EntityItem item = (EntityItem) entityReader.readItem();
+			assertEquals( COMPANIES[i].getName(), ( (Company) item.getEntity() ).getName() );
+		}
+		assertNull( entityReader.readItem() );
+		entityReader.close();
+
+		// the last range is left to the other partitions
+		assertEquals( Integer.valueOf( 2 ), rangeQueue.claim( Company.class.getName() ) );
+		assertNull( rangeQueue.claim( Company.class.getName() ) );
+	}
 }
@@ -0,0 +1,93 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.search.jsr352.massindexing.test.entity.City;
+import org.hibernate.search.jsr352.massindexing.test.entity.Continent;
+import org.hibernate.search.jsr352.massindexing.test.entity.Country;
+import org.hibernate.search.jsr352.massindexing.test.entity.Warehouse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the check of the initialized entity graphs, used by the document builder threads.
+ *
+ * @author Mincong Huang
+ */
+public class InitializedGraphCheckerTest {
+
+	private static final String PERSISTENCE_UNIT_NAME = "h2";
+
+	private EntityManagerFactory emf;
+	private int warehouseId;
+
+	@Before
+	public void setUp() {
+		emf = Persistence.createEntityManagerFactory( PERSISTENCE_UNIT_NAME );
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			Continent europe = new Continent( "Europe" );
+			Country france = new Country( "France", europe );
+			City paris = new City( "Paris", france );
+			Warehouse warehouse = new Warehouse( "W1", paris );
+			em.persist( europe );
+			em.persist( france );
+			em.persist( paris );
+			em.persist( warehouse );
+			em.getTransaction().commit();
+			warehouseId = warehouse.getId();
+		}
+		finally {
+			em.close();
+		}
+	}
+
+	@After
+	public void shutDown() {
+		if ( emf.isOpen() ) {
+			emf.close();
+		}
+	}
+
+	/**
+	 * The graph of a warehouse is initialized once its lazy city, the country of the city and the continent of the
+	 * country are all initialized, even though none of them is embedded in the index.
+	 */
+	@Test
+	public void testIsInitialized() {
+		SessionFactory sessionFactory = emf.unwrap( SessionFactory.class );
+		InitializedGraphChecker checker = new InitializedGraphChecker( (SessionFactoryImplementor) sessionFactory );
+		Session session = sessionFactory.openSession();
+		try {
+			Warehouse warehouse = (Warehouse) session.get( Warehouse.class, warehouseId );
+			assertFalse( checker.isInitialized( warehouse ) );
+
+			Hibernate.initialize( warehouse.getCity() );
+			assertFalse( checker.isInitialized( warehouse ) );
+
+			Hibernate.initialize( warehouse.getCity().getCountry() );
+			Hibernate.initialize( warehouse.getCity().getCountry().getContinent() );
+			assertTrue( checker.isInitialized( warehouse ) );
+		}
+		finally {
+			session.close();
+		}
+	}
+}
@@ -7,20 +7,42 @@
 package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import javax.batch.api.partition.PartitionPlan;
 import javax.batch.runtime.context.JobContext;
+import javax.batch.runtime.context.StepContext;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.dialect.DB2Dialect;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.Oracle8iDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.dialect.SQLServer2005Dialect;
 import org.hibernate.search.jsr352.massindexing.impl.JobContextData;
+import org.hibernate.search.jsr352.massindexing.impl.util.IdRangeQueue;
 import org.hibernate.search.jsr352.massindexing.impl.steps.lucene.PartitionMapper;
+import org.hibernate.search.jsr352.massindexing.test.entity.Car;
 import org.hibernate.search.jsr352.massindexing.test.entity.Company;
+import org.hibernate.search.jsr352.massindexing.test.entity.Customer;
 import org.hibernate.search.jsr352.massindexing.test.entity.Person;
+import org.hibernate.search.jsr352.massindexing.test.entity.Vehicle;
 import org.jboss.logging.Logger;
 import org.junit.After;
 import org.junit.Before;
@@ -48,6 +70,9 @@ public class PartitionMapperTest {
 	@Mock
 	private JobContext mockedJobContext;
 
+	@Mock
+	private StepContext mockedStepContext;
+
 	@InjectMocks
 	private PartitionMapper partitionMapper;
 
@@ -75,17 +100,7 @@ public class PartitionMapperTest {
 			}
 		}
 
-		final String fetchSize = String.valueOf( 200 * 1000 );
-		final String hql = null;
-		final String maxThreads = String.valueOf( 1 );
-		final String rowsPerPartition = String.valueOf( 3 );
-		partitionMapper = new PartitionMapper( null,
-				fetchSize,
-				hql,
-				rowsPerPartition,
-				maxThreads );
-
-		MockitoAnnotations.initMocks( this );
+		initPartitionMapper( null, 3, 1, 0, false, false, false );
 	}
 
 	/**
@@ -98,36 +113,386 @@ public class PartitionMapperTest {
 	@Test
 	public void testMapPartitions() throws Exception {
 
-		// mock job context
+		mockJobData( Company.class, Person.class );
+
+		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
+
+		// nbPartitions = rows / rowsPerPartition + 1
+		assertEquals( 2, countPartitions( partitionPlan, Company.class ) ); // 3 / 3 + 1 = 2 partitions
+		assertEquals( 3, countPartitions( partitionPlan, Person.class ) ); // 8 / 3 + 1 = 3 partitions
+	}
+
+	/**
+	 * Prove that the number of rows per partition is derived from the total number of rows when a number of partitions
+	 * per thread is given: 11 rows for 1 thread and 2 partitions per thread gives 6 rows per partition.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapPartitions_partitionsPerThread() throws Exception {
+
+		initPartitionMapper( null, 3, 1, 2, false, false, false );
+
+		mockJobData( Company.class, Person.class );
+
+		// mock step context
+		StepProgress stepProgress = new StepProgress();
+		stepProgress.setRowsToIndex( Company.class.getName(), COMP_ROWS );
+		stepProgress.setRowsToIndex( Person.class.getName(), PERS_ROWS );
+		Mockito.when( mockedStepContext.getTransientUserData() ).thenReturn( stepProgress );
+
+		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
+
+		assertEquals( 1, countPartitions( partitionPlan, Company.class ) ); // 3 / 6 + 1 = 1 partition
+		assertEquals( 2, countPartitions( partitionPlan, Person.class ) ); // 8 / 6 + 1 = 2 partitions
+	}
+
+	/**
+	 * Prove that the fixed number of rows per partition is used when a number of partitions per thread is given, but
+	 * the number of rows to index is unknown: without step progress, or without the row count of an entity type.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapPartitions_partitionsPerThreadFallback() throws Exception {
+
+		initPartitionMapper( null, 3, 1, 2, false, false, false );
+
+		mockJobData( Company.class, Person.class );
+
+		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
+
+		assertEquals( 2, countPartitions( partitionPlan, Company.class ) ); // 3 / 3 + 1 = 2 partitions
+		assertEquals( 3, countPartitions( partitionPlan, Person.class ) ); // 8 / 3 + 1 = 3 partitions
+
+		// mock step context, missing the row count of persons
+		StepProgress stepProgress = new StepProgress();
+		stepProgress.setRowsToIndex( Company.class.getName(), COMP_ROWS );
+		Mockito.when( mockedStepContext.getTransientUserData() ).thenReturn( stepProgress );
+
+		partitionPlan = partitionMapper.mapPartitions();
+
+		assertEquals( 2, countPartitions( partitionPlan, Company.class ) );
+		assertEquals( 3, countPartitions( partitionPlan, Person.class ) );
+	}
+
+	/**
+	 * Prove that the ID range of an entity type having an integral ID is split into partitions of equal span, while
+	 * an entity type having a string ID is still partitioned by scrolling its IDs.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapPartitions_splitIdRange() throws Exception {
+
+		initPartitionMapper( null, 1, 1, 0, true, false, false );
+
+		mockJobData( Company.class, Person.class );
+
+		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
+
+		// 3 IDs split into 3 spans, no tail partition
+		assertEquals( 3, countPartitions( partitionPlan, Company.class ) );
+		assertEquals( 9, countPartitions( partitionPlan, Person.class ) ); // 8 / 1 + 1 = 9 partitions
+	}
+
+	/**
+	 * Prove that the ID range split takes the number of partitions from the number of rows to index already counted
+	 * in the step progress, instead of counting the rows: 1 row to index in 1 partition, whatever the ID span.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapPartitions_splitIdRangeWithRowCount() throws Exception {
+
+		initPartitionMapper( null, 1, 1, 0, true, false, false );
+
+		mockJobData( Company.class );
+		StepProgress stepProgress = new StepProgress();
+		stepProgress.setRowsToIndex( Company.class.getName(), 1 );
+		Mockito.when( mockedStepContext.getTransientUserData() ).thenReturn( stepProgress );
+
+		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
+
+		assertEquals( 1, countPartitions( partitionPlan, Company.class ) );
+		assertEquals( 1, stepProgress.getRowsToIndex( Company.class.getName() ) );
+	}
+
+	/**
+	 * Prove that the criteria restrict every root entity, each one being partitioned independently with its own
+	 * criteria, instead of partitioning the first root entity only.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapPartitions_entityCriteria() throws Exception {
+
+		Map<String, Set<Criterion>> entityCriteria = new HashMap<>();
+		entityCriteria.put( Company.class.getName(),
+				Collections.singleton( Restrictions.in( "name", "C1", "C2" ) ) );
+		entityCriteria.put( Person.class.getName(),
+				Collections.singleton( Restrictions.in( "id", "P1", "P2", "P3", "P4" ) ) );
+
+		JobContextData jobData = mockJobData( Company.class, Person.class );
+		jobData.setEntityCriteria( entityCriteria );
+
+		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
+
+		assertEquals( 1, countPartitions( partitionPlan, Company.class ) ); // 2 / 3 + 1 = 1 partition
+		assertEquals( 2, countPartitions( partitionPlan, Person.class ) ); // 4 / 3 + 1 = 2 partitions
+	}
+
+	/**
+	 * Prove that a partitioned HQL selection is split into ID ranges like a criteria selection, instead of being read
+	 * by a single partition.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapPartitions_partitionHql() throws Exception {
+
+		initPartitionMapper( "from Person p where p.id like 'P%'", 3, 1, 0, false, false, true );
+
+		mockJobData( Person.class );
+
+		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
+		assertEquals( 3, partitionPlan.getPartitions() ); // 8 / 3 + 1 = 3 partitions
+	}
+
+	/**
+	 * Prove that the rows not counted before the partition mapping are counted while computing the partition units.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapPartitions_rowCount() throws Exception {
+
+		mockJobData( Company.class, Person.class );
+
+		// mock step context
+		StepProgress stepProgress = new StepProgress();
+		Mockito.when( mockedStepContext.getTransientUserData() ).thenReturn( stepProgress );
+
+		partitionMapper.mapPartitions();
+
+		assertEquals( COMP_ROWS, stepProgress.getRowsToIndex( Company.class.getName() ) );
+		assertEquals( PERS_ROWS, stepProgress.getRowsToIndex( Person.class.getName() ) );
+	}
+
+	/**
+	 * Prove that, when partitions steal their work, the ID ranges are shared in a queue by at most one partition per
+	 * thread and entity type, and that the ranges already indexed are not claimed again.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapPartitions_workStealing() throws Exception {
+
+		initPartitionMapper( null, 3, 2, 0, false, true, false );
+
+		JobContextData jobData = mockJobData( Company.class, Person.class );
+
+		// mock step context
+		StepProgress stepProgress = new StepProgress();
+		Mockito.when( mockedStepContext.getTransientUserData() ).thenReturn( stepProgress );
+
+		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
+
+		assertEquals( 4, partitionPlan.getPartitions() ); // 2 threads for Company and 2 threads for Person
+		assertEquals( 5, stepProgress.getPartitionBounds().size() ); // 2 Company ranges and 3 Person ranges
+
+		// restart after the first Person range has been indexed
+		int firstPersonRange = -1;
+		for ( int i = 0; i < stepProgress.getPartitionBounds().size(); i++ ) {
+			if ( firstPersonRange < 0 && stepProgress.getPartitionBounds().get( i ).getEntityType() == Person.class ) {
+				firstPersonRange = i;
+			}
+		}
+		PartitionProgress partitionProgress = new PartitionProgress( 2, Person.class.getName() );
+		partitionProgress.rangesCompleted( Collections.singleton( firstPersonRange ) );
+		stepProgress.updateProgress( partitionProgress );
+
+		partitionPlan = partitionMapper.mapPartitions();
+
+		assertEquals( 4, partitionPlan.getPartitions() );
+		IdRangeQueue rangeQueue = jobData.getRangeQueue();
+		assertNotNull( rangeQueue.claim( Person.class.getName() ) );
+		assertNotNull( rangeQueue.claim( Person.class.getName() ) );
+		assertNull( rangeQueue.claim( Person.class.getName() ) );
+	}
+
+	/**
+	 * Prove that the partitions can steal their work when no step progress is available: every range is then
+	 * available in the queue.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapPartitions_workStealingWithoutProgress() throws Exception {
+
+		initPartitionMapper( null, 3, 2, 0, false, true, false );
+
+		JobContextData jobData = mockJobData( Company.class, Person.class );
+
+		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
+
+		assertEquals( 4, partitionPlan.getPartitions() ); // 2 threads for Company and 2 threads for Person
+		IdRangeQueue rangeQueue = jobData.getRangeQueue();
+		assertNotNull( rangeQueue.claim( Person.class.getName() ) );
+		assertNotNull( rangeQueue.claim( Person.class.getName() ) );
+		assertNotNull( rangeQueue.claim( Person.class.getName() ) );
+		assertNull( rangeQueue.claim( Person.class.getName() ) );
+	}
+
+	/**
+	 * Prove that a restarted job reuses the partition bounds of the previous execution, even if rows were added since
+	 * then, instead of scanning the IDs again.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapPartitions_restartReusesBounds() throws Exception {
+
+		mockJobData( Company.class, Person.class );
+
+		// mock step context
+		StepProgress stepProgress = new StepProgress();
+		Mockito.when( mockedStepContext.getTransientUserData() ).thenReturn( stepProgress );
+
+		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
+		assertEquals( 5, partitionPlan.getPartitions() );
+		assertEquals( 5, stepProgress.getPartitionBounds().size() );
+
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			for ( int i = 1; i <= PERS_ROWS; i++ ) {
+				em.persist( new Person( "Q" + i, "", "" ) );
+			}
+			em.getTransaction().commit();
+		}
+		finally {
+			em.close();
+		}
+
+		partitionPlan = partitionMapper.mapPartitions();
+		assertEquals( 5, partitionPlan.getPartitions() );
+		assertNull( stepProgress.getPartitionBounds().get( 4 ).getUpperBound() );
+	}
+
+	/**
+	 * Prove that the boundaries selected by numbering the rows of the table are not used for the entity types sharing
+	 * their table with other entity types, or restricted by a {@code @Where} clause: they fall back to scrolling the
+	 * IDs, so the rows of the other entity types and the hidden rows are not counted. The dialect is pretended to
+	 * support window functions, as H2 does not.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapPartitions_windowFunctionsSkipped() throws Exception {
+
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			for ( int i = 1; i <= 4; i++ ) {
+				em.persist( new Vehicle( "V" + i ) );
+			}
+			for ( int i = 1; i <= 5; i++ ) {
+				em.persist( new Car( "C" + i ) );
+			}
+			for ( int i = 1; i <= 6; i++ ) {
+				em.persist( new Customer( "C" + i, i % 2 == 0 ) );
+			}
+			em.getTransaction().commit();
+		}
+		finally {
+			em.close();
+		}
+
+		partitionMapper = Mockito.spy( partitionMapper );
+		Mockito.doReturn( true ).when( partitionMapper ).supportsWindowFunctions( Mockito.any( Dialect.class ) );
+		mockJobData( Vehicle.class, Car.class, Customer.class );
+
+		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
+
+		Mockito.verify( partitionMapper, Mockito.times( 3 ) ).supportsWindowFunctions( Mockito.any( Dialect.class ) );
+		assertEquals( 4, countPartitions( partitionPlan, Vehicle.class ) ); // 9 / 3 + 1 = 4 partitions
+		assertEquals( 2, countPartitions( partitionPlan, Car.class ) ); // 5 / 3 + 1 = 2 partitions
+		assertEquals( 2, countPartitions( partitionPlan, Customer.class ) ); // 3 / 3 + 1 = 2 partitions
+	}
+
+	/**
+	 * The boundaries are selected with the same SQL on each dialect supporting window functions, only the identifiers
+	 * being quoted by the dialect. Other dialects, like H2, are not supported.
+	 */
+	@Test
+	public void testBuildRowNumberSql() {
+		assertRowNumberSql( new PostgreSQL81Dialect(), "\"Company\"", "\"id\"" );
+		assertRowNumberSql( new Oracle8iDialect(), "\"Company\"", "\"id\"" );
+		assertRowNumberSql( new SQLServer2005Dialect(), "[Company]", "[id]" );
+		assertRowNumberSql( new DB2Dialect(), "\"Company\"", "\"id\"" );
+		assertFalse( new PartitionMapper().supportsWindowFunctions( new H2Dialect() ) );
+	}
+
+	private static void assertRowNumberSql(Dialect dialect, String expectedTable, String expectedIdColumn) {
+		assertTrue( new PartitionMapper().supportsWindowFunctions( dialect ) );
+		String sql = PartitionMapper.buildRowNumberSql( dialect.quote( "`Company`" ), dialect.quote( "`id`" ), 3 );
+		assertEquals( "select bound_id, row_num, total_rows from ("
+				+ " select " + expectedIdColumn + " as bound_id,"
+				+ " row_number() over ( order by " + expectedIdColumn + " ) as row_num,"
+				+ " count(*) over () as total_rows"
+				+ " from " + expectedTable
+				+ " ) numbered_rows"
+				+ " where row_num = floor( row_num / 3 ) * 3"
+				+ " or row_num = total_rows"
+				+ " order by bound_id", sql );
+	}
+
+	/**
+	 * Create the partition mapper under test and inject the mocked batch contexts into it.
+	 */
+	private void initPartitionMapper(String hql, int rowsPerPartition, int maxThreads,
+			int partitionsPerThread, boolean splitIdRange, boolean workStealing, boolean partitionHql) {
+		partitionMapper = new PartitionMapper( null,
+				String.valueOf( 200 * 1000 ),
+				hql,
+				String.valueOf( rowsPerPartition ),
+				String.valueOf( maxThreads ),
+				String.valueOf( partitionsPerThread ),
+				String.valueOf( splitIdRange ),
+				String.valueOf( workStealing ),
+				String.valueOf( partitionHql ) );
+		MockitoAnnotations.initMocks( this );
+	}
+
+	/**
+	 * Mock the job context data of a job indexing the given entity types, without criteria.
+	 */
+	private JobContextData mockJobData(Class<?> firstEntityType, Class<?>... otherEntityTypes) {
 		JobContextData jobData = new JobContextData();
 		jobData.setEntityManagerFactory( emf );
 		jobData.setCriteria( new HashSet<>() );
-		jobData.setEntityTypes( Company.class, Person.class );
+		jobData.setEntityTypes( firstEntityType, otherEntityTypes );
 		Mockito.when( mockedJobContext.getTransientUserData() ).thenReturn( jobData );
+		return jobData;
+	}
 
-		PartitionPlan partitionPlan = partitionMapper.mapPartitions();
-
-		int compPartitions = 0;
-		int persPartitions = 0;
+	private static int countPartitions(PartitionPlan partitionPlan, Class<?> entityType) {
+		int partitions = 0;
 		for ( Properties p : partitionPlan.getPartitionProperties() ) {
-			String entityName = p.getProperty( "entityName" );
-			if ( entityName.equals( Company.class.getName() ) ) {
-				compPartitions++;
-			}
-			if ( entityName.equals( Person.class.getName() ) ) {
-				persPartitions++;
+			if ( entityType.getName().equals( p.getProperty( "entityName" ) ) ) {
+				partitions++;
 			}
 		}
-
-		// nbPartitions = rows / rowsPerPartition + 1
-		assertEquals( 2, compPartitions ); // 3 / 3 + 1 = 2 partitions
-		assertEquals( 3, persPartitions ); // 8 / 3 + 1 = 3 partitions
+		return partitions;
 	}
 
 	@After
-	public void shutDown() {
+	public void shutDown() throws IOException {
 		if ( emf.isOpen() ) {
 			emf.close();
 		}
+		// written by the mapper for the mocked job instance
+		StepProgressFile.delete( mockedJobContext.getInstanceId() );
 	}
 }
@@ -0,0 +1,54 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.impl.steps.lucene;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the analyzer of the private index writers in bulk-load mode.
+ *
+ * @author Mincong Huang
+ */
+public class WorkAnalyzerTest {
+
+	private Analyzer entityAnalyzer;
+	private Analyzer keywordAnalyzer;
+	private WorkAnalyzer workAnalyzer;
+
+	@Before
+	public void setUp() {
+		entityAnalyzer = new StandardAnalyzer();
+		keywordAnalyzer = new KeywordAnalyzer();
+		workAnalyzer = new WorkAnalyzer( entityAnalyzer,
+				name -> "keyword".equals( name ) ? keywordAnalyzer : null );
+	}
+
+	@Test
+	public void testGetWrappedAnalyzer_noDiscriminator() {
+		workAnalyzer.setFieldToAnalyzerMap( null );
+		assertSame( entityAnalyzer, workAnalyzer.getWrappedAnalyzer( "title" ) );
+	}
+
+	@Test
+	public void testGetWrappedAnalyzer_discriminator() {
+		workAnalyzer.setFieldToAnalyzerMap( Collections.singletonMap( "title", "keyword" ) );
+		assertSame( keywordAnalyzer, workAnalyzer.getWrappedAnalyzer( "title" ) );
+		assertSame( entityAnalyzer, workAnalyzer.getWrappedAnalyzer( "author" ) );
+
+		// the analyzers chosen for a document do not apply to the next one
+		workAnalyzer.setFieldToAnalyzerMap( Collections.emptyMap() );
+		assertSame( entityAnalyzer, workAnalyzer.getWrappedAnalyzer( "title" ) );
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.test.entity;
+
+import javax.persistence.Entity;
+
+import org.hibernate.search.annotations.Indexed;
+
+/**
+ * Subclass of {@link Vehicle}, sharing its table.
+ *
+ * @author Mincong Huang
+ */
+@Entity
+@Indexed
+public class Car extends Vehicle {
+
+	public Car() {
+	}
+
+	public Car(String name) {
+		super( name );
+	}
+
+	@Override
+	public String toString() {
+		return "Car [id=" + getId() + ", name=" + getName() + "]";
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.test.entity;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+import org.hibernate.search.annotations.Field;
+import org.hibernate.search.annotations.IndexedEmbedded;
+
+/**
+ * Reference entity, shared by many {@link Store}s.
+ *
+ * @author Mincong Huang
+ */
+@Entity
+public class City {
+
+	@Id
+	@GeneratedValue
+	private int id;
+
+	@Field
+	private String name;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	@IndexedEmbedded
+	private Country country;
+
+	public City() {
+	}
+
+	public City(String name, Country country) {
+		this.name = name;
+		this.country = country;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Country getCountry() {
+		return country;
+	}
+
+	public void setCountry(Country country) {
+		this.country = country;
+	}
+
+	@Override
+	public String toString() {
+		return "City [id=" + id + ", name=" + name + "]";
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.test.entity;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+import org.hibernate.search.annotations.Field;
+
+/**
+ * Entity embedded in the index of {@link Store}, two levels below the reference entity {@link City}.
+ *
+ * @author Mincong Huang
+ */
+@Entity
+public class Continent {
+
+	@Id
+	@GeneratedValue
+	private int id;
+
+	@Field
+	private String name;
+
+	public Continent() {
+	}
+
+	public Continent(String name) {
+		this.name = name;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public String toString() {
+		return "Continent [id=" + id + ", name=" + name + "]";
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.test.entity;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Inheritance;
+import javax.persistence.InheritanceType;
+
+import org.hibernate.search.annotations.DocumentId;
+import org.hibernate.search.annotations.Field;
+import org.hibernate.search.annotations.Indexed;
+
+/**
+ * Root of an inheritance hierarchy stored in a single table.
+ *
+ * @author Mincong Huang
+ */
+@Entity
+@Indexed
+@Inheritance(strategy = InheritanceType.SINGLE_TABLE)
+public class Vehicle {
+
+	@Id
+	@GeneratedValue
+	@DocumentId
+	private int id;
+
+	@Field
+	private String name;
+
+	public Vehicle() {
+	}
+
+	public Vehicle(String name) {
+		this.name = name;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public String toString() {
+		return "Vehicle [id=" + id + ", name=" + name + "]";
+	}
+}
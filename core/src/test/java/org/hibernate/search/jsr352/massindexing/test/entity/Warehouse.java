@@ -0,0 +1,81 @@
+/*
+ * Hibernate Search, full-text search for your domain model
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.search.jsr352.massindexing.test.entity;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+import org.hibernate.search.annotations.Analyze;
+import org.hibernate.search.annotations.DocumentId;
+import org.hibernate.search.annotations.Field;
+import org.hibernate.search.annotations.Indexed;
+
+/**
+ * Indexed entity whose indexed getter reads a lazy association, which is not embedded in the index.
+ *
+ * @author Mincong Huang
+ */
+@Entity
+@Indexed
+public class Warehouse {
+
+	@Id
+	@GeneratedValue
+	@DocumentId
+	private int id;
+
+	@Field
+	private String name;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	private City city;
+
+	public Warehouse() {
+	}
+
+	public Warehouse(String name, City city) {
+		this.name = name;
+		this.city = city;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public City getCity() {
+		return city;
+	}
+
+	public void setCity(City city) {
+		this.city = city;
+	}
+
+	@Field(analyze = Analyze.NO)
+	public String getCityName() {
+		return city == null ? null : city.getName();
+	}
+
+	@Override
+	public String toString() {
+		return "Warehouse [id=" + id + ", name=" + name + "]";
+	}
+}